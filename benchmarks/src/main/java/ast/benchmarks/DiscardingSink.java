@@ -0,0 +1,13 @@
+package ast.benchmarks;
+
+import ast.Sink;
+
+/**
+ * Sink that throws its input away, so that a benchmark measures the traversal and not the output.
+ */
+final class DiscardingSink extends Sink
+{
+    @Override public void append(char c) { }
+    @Override public void append(CharSequence text) { }
+    @Override public void append(char[] chars, int offset, int length) { }
+}
@@ -0,0 +1,71 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import ast.MinifierEngine;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Name;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-node dispatch cost: the same traversal as {@link VisitBenchmark}, once with accept-based
+ * dispatch and once with the old switch on getKind(). Output goes to a processor that ignores
+ * every token, so printing costs don't hide the difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark
+{
+    @Param({SyntheticSources.MEDIUM, SyntheticSources.LARGE})
+    public String size;
+
+    private JCTree.JCCompilationUnit compilationUnit;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            compilationUnit = engine.parse(SyntheticSources.forSize(size));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    private static final class SilentProcessor extends ASTVisitor.Processor
+    {
+        @Override public void processCloseBlock() { }
+        @Override public void processCloseParenthesis() { }
+        @Override public void processKeyword(String keyword) { }
+        @Override public void processLiteral(String literal) { }
+        @Override public void processName(Name name) { }
+        @Override public void processOpenBlock() { }
+        @Override public void processOpenParenthesis() { }
+        @Override public void processSymbol(String symbol) { }
+    }
+
+    @Benchmark
+    public ASTVisitor.Processor accept()
+    {
+        ASTVisitor.Processor processor = new SilentProcessor();
+        new ASTVisitor(processor).visitTopLevel(compilationUnit);
+        return processor;
+    }
+
+    @Benchmark
+    public ASTVisitor.Processor kindSwitch()
+    {
+        ASTVisitor.Processor processor = new SilentProcessor();
+        new SwitchDispatchVisitor(processor).visitTopLevel(compilationUnit);
+        return processor;
+    }
+}
@@ -0,0 +1,50 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import ast.MinifierEngine;
+import ast.Sink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phase 3: Processor emission. The visitor's calls are recorded once and replayed into a fresh
+ * Processor writing to a string sink, so only the emission cost is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmitBenchmark
+{
+    @Param({SyntheticSources.SMALL, SyntheticSources.MEDIUM, SyntheticSources.LARGE})
+    public String size;
+
+    private RecordingProcessor recording;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            recording = new RecordingProcessor();
+            new ASTVisitor(recording).visitTopLevel(engine.parse(SyntheticSources.forSize(size)));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    @Benchmark
+    public String emit()
+    {
+        ASTVisitor.Processor processor = new ASTVisitor.Processor(Sink.forString());
+        recording.replay(processor);
+        return processor.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import ast.MinifierEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-file setup cost a reused MinifierEngine avoids: ASTVisitor.minify builds a fresh javac
+ * Context, file manager and factories on every call, while the engine keeps them between files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineReuseBenchmark
+{
+    @Param({SyntheticSources.SMALL, SyntheticSources.MEDIUM})
+    public String size;
+
+    private String source;
+    private MinifierEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        source = SyntheticSources.forSize(size);
+        engine = new MinifierEngine();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        engine.close();
+    }
+
+    @Benchmark
+    public String oneShot()
+    {
+        return ASTVisitor.minify(source);
+    }
+
+    @Benchmark
+    public String reused()
+    {
+        return engine.minify(source);
+    }
+}
@@ -0,0 +1,45 @@
+package ast.benchmarks;
+
+import ast.MinifierEngine;
+import com.sun.tools.javac.tree.JCTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phase 1: javac's Parser.compilationUnit(), through a warm MinifierEngine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark
+{
+    @Param({SyntheticSources.SMALL, SyntheticSources.MEDIUM, SyntheticSources.LARGE})
+    public String size;
+
+    private String source;
+    private MinifierEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        source = SyntheticSources.forSize(size);
+        engine = new MinifierEngine();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        engine.close();
+    }
+
+    @Benchmark
+    public JCTree.JCCompilationUnit parse()
+    {
+        return engine.parse(source);
+    }
+}
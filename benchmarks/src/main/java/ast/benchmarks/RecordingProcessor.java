@@ -0,0 +1,62 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import com.sun.tools.javac.util.Name;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the calls the visitor makes on its Processor so that they can be replayed into a real
+ * Processor, isolating the cost of emission from the cost of traversal.
+ */
+final class RecordingProcessor extends ASTVisitor.Processor
+{
+    private enum Call
+    {
+        CLOSE_BLOCK, CLOSE_CLASS, CLOSE_PARENTHESIS, KEYWORD, LITERAL, NAME, OPEN_BLOCK, OPEN_CLASS, OPEN_PARENTHESIS, SYMBOL
+    }
+
+    private final List<Call> calls = new ArrayList<Call>();
+    private final List<Object> arguments = new ArrayList<Object>();
+
+    RecordingProcessor() { super(new DiscardingSink()); }
+
+    private void record(Call call, Object argument)
+    {
+        calls.add(call);
+        arguments.add(argument);
+    }
+
+    @Override public void processCloseBlock() { record(Call.CLOSE_BLOCK, null); }
+    @Override public void processCloseClass() { super.processCloseClass(); record(Call.CLOSE_CLASS, null); }
+    @Override public void processCloseParenthesis() { record(Call.CLOSE_PARENTHESIS, null); }
+    @Override public void processKeyword(String keyword) { record(Call.KEYWORD, keyword); }
+    @Override public void processLiteral(String literal) { record(Call.LITERAL, literal); }
+    @Override public void processName(Name name) { record(Call.NAME, name); }
+    @Override public void processOpenBlock() { record(Call.OPEN_BLOCK, null); }
+    @Override public void processOpenClass(Name className) { super.processOpenClass(className); record(Call.OPEN_CLASS, className); }
+    @Override public void processOpenParenthesis() { record(Call.OPEN_PARENTHESIS, null); }
+    @Override public void processSymbol(String symbol) { record(Call.SYMBOL, symbol); }
+
+    void replay(ASTVisitor.Processor processor)
+    {
+        for (int i = 0; i < calls.size(); ++i)
+        {
+            Object argument = arguments.get(i);
+            switch (calls.get(i))
+            {
+                case CLOSE_BLOCK: processor.processCloseBlock(); break;
+                case CLOSE_CLASS: processor.processCloseClass(); break;
+                case CLOSE_PARENTHESIS: processor.processCloseParenthesis(); break;
+                case KEYWORD: processor.processKeyword((String) argument); break;
+                case LITERAL: processor.processLiteral((String) argument); break;
+                case NAME: processor.processName((Name) argument); break;
+                case OPEN_BLOCK: processor.processOpenBlock(); break;
+                case OPEN_CLASS: processor.processOpenClass((Name) argument); break;
+                case OPEN_PARENTHESIS: processor.processOpenParenthesis(); break;
+                case SYMBOL: processor.processSymbol((String) argument); break;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import com.sun.tools.javac.tree.JCTree;
+
+/**
+ * ASTVisitor with the dispatch it used before accept-based scanning: a switch on getKind() and a
+ * cast per node. Kept only as the baseline for {@link DispatchBenchmark}.
+ */
+final class SwitchDispatchVisitor extends ASTVisitor
+{
+    SwitchDispatchVisitor(Processor processor)
+    {
+        super(processor);
+    }
+
+    @Override
+    protected void scan(JCTree jcTree)
+    {
+        if (jcTree == null) return;
+        switch (jcTree.getKind()) {
+            case ANNOTATION: this.visitAnnotation((JCTree.JCAnnotation) jcTree); break;
+            case ARRAY_ACCESS: this.visitIndexed((JCTree.JCArrayAccess) jcTree); break;
+            case ARRAY_TYPE: this.visitTypeArray((JCTree.JCArrayTypeTree) jcTree); break;
+            case ASSERT: this.visitAssert((JCTree.JCAssert) jcTree); break;
+            case ASSIGNMENT: this.visitAssign((JCTree.JCAssign) jcTree); break;
+            case BLOCK: this.visitBlock((JCTree.JCBlock) jcTree); break;
+            case BREAK: this.visitBreak((JCTree.JCBreak) jcTree); break;
+            case CLASS: this.visitClassDef((JCTree.JCClassDecl) jcTree); break;
+            case CONDITIONAL_EXPRESSION: this.visitConditional((JCTree.JCConditional) jcTree); break;
+            case CONTINUE: this.visitContinue((JCTree.JCContinue) jcTree); break;
+            case DO_WHILE_LOOP: this.visitDoLoop((JCTree.JCDoWhileLoop) jcTree); break;
+            case ENHANCED_FOR_LOOP: this.visitForeachLoop((JCTree.JCEnhancedForLoop) jcTree); break;
+            case EMPTY_STATEMENT: break;
+            case EXPRESSION_STATEMENT: this.visitExec((JCTree.JCExpressionStatement) jcTree); break;
+            case FOR_LOOP: this.visitForLoop((JCTree.JCForLoop) jcTree); break;
+            case IDENTIFIER: this.visitIdent((JCTree.JCIdent) jcTree); break;
+            case IF: this.visitIf((JCTree.JCIf) jcTree); break;
+            case IMPORT: this.visitImport((JCTree.JCImport) jcTree); break;
+            case INSTANCE_OF: this.visitTypeTest((JCTree.JCInstanceOf) jcTree); break;
+            case MEMBER_SELECT: this.visitSelect((JCTree.JCFieldAccess) jcTree); break;
+            case METHOD: this.visitMethodDef((JCTree.JCMethodDecl) jcTree); break;
+            case METHOD_INVOCATION: this.visitApply((JCTree.JCMethodInvocation) jcTree); break;
+            case MODIFIERS: this.visitModifiers((JCTree.JCModifiers) jcTree); break;
+            case NEW_ARRAY: this.visitNewArray((JCTree.JCNewArray) jcTree); break;
+            case NEW_CLASS: this.visitNewClass((JCTree.JCNewClass) jcTree); break;
+            case PARAMETERIZED_TYPE: this.visitTypeApply((JCTree.JCTypeApply) jcTree); break;
+            case PARENTHESIZED: this.visitParens((JCTree.JCParens) jcTree); break;
+            case PRIMITIVE_TYPE: this.visitTypeIdent((JCTree.JCPrimitiveTypeTree) jcTree); break;
+            case RETURN: this.visitReturn((JCTree.JCReturn) jcTree); break;
+            case SWITCH: this.visitSwitch((JCTree.JCSwitch) jcTree); break;
+            case SYNCHRONIZED: this.visitSynchronized((JCTree.JCSynchronized) jcTree); break;
+            case THROW: this.visitThrow((JCTree.JCThrow) jcTree); break;
+            case TRY: this.visitTry((JCTree.JCTry) jcTree); break;
+            case TYPE_CAST: this.visitTypeCast((JCTree.JCTypeCast) jcTree); break;
+            case TYPE_PARAMETER: this.visitTypeParameter((JCTree.JCTypeParameter) jcTree); break;
+            case VARIABLE: this.visitVarDef((JCTree.JCVariableDecl) jcTree); break;
+            case WHILE_LOOP: this.visitWhileLoop((JCTree.JCWhileLoop) jcTree); break;
+
+
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+            case REMAINDER:
+            case LESS_THAN:
+            case GREATER_THAN:
+            case LESS_THAN_EQUAL:
+            case GREATER_THAN_EQUAL:
+            case EQUAL_TO:
+            case NOT_EQUAL_TO:
+            case AND:
+            case XOR:
+            case OR:
+            case CONDITIONAL_AND:
+            case CONDITIONAL_OR:
+            case LEFT_SHIFT:
+            case RIGHT_SHIFT:
+            case UNSIGNED_RIGHT_SHIFT:
+                this.visitBinary((JCTree.JCBinary) jcTree);
+                break;
+
+            case INT_LITERAL:
+            case LONG_LITERAL:
+            case FLOAT_LITERAL:
+            case DOUBLE_LITERAL:
+            case BOOLEAN_LITERAL:
+            case CHAR_LITERAL:
+            case STRING_LITERAL:
+            case NULL_LITERAL:
+                this.visitLiteral((JCTree.JCLiteral) jcTree);
+                break;
+
+            case BITWISE_COMPLEMENT:
+            case UNARY_MINUS:
+            case UNARY_PLUS:
+            case LOGICAL_COMPLEMENT:
+            case PREFIX_INCREMENT:
+            case PREFIX_DECREMENT:
+            case POSTFIX_INCREMENT:
+            case POSTFIX_DECREMENT:
+                this.visitUnary((JCTree.JCUnary) jcTree);
+                break;
+
+            case MULTIPLY_ASSIGNMENT:
+            case DIVIDE_ASSIGNMENT:
+            case REMAINDER_ASSIGNMENT:
+            case PLUS_ASSIGNMENT:
+            case MINUS_ASSIGNMENT:
+            case LEFT_SHIFT_ASSIGNMENT:
+            case RIGHT_SHIFT_ASSIGNMENT:
+            case UNSIGNED_RIGHT_SHIFT_ASSIGNMENT:
+            case AND_ASSIGNMENT:
+            case XOR_ASSIGNMENT:
+            case OR_ASSIGNMENT:
+                this.visitAssignop((JCTree.JCAssignOp) jcTree);
+                break;
+
+            case UNBOUNDED_WILDCARD:
+            case EXTENDS_WILDCARD:
+            case SUPER_WILDCARD:
+                this.visitWildcard((JCTree.JCWildcard) jcTree);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unhandled kind " + jcTree.getKind().toString());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ast.benchmarks;
+
+/**
+ * Generates Java sources of a given size out of a method template that touches the statement and
+ * expression kinds the visitor spends most of its time on: loops, branches, long binary chains,
+ * method call chains, casts and conditionals.
+ */
+public final class SyntheticSources
+{
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String LARGE = "large";
+
+    private SyntheticSources() { }
+
+    public static String forSize(String size)
+    {
+        if (SMALL.equals(size)) return generate(5);
+        if (MEDIUM.equals(size)) return generate(200);
+        if (LARGE.equals(size)) return generate(5000);
+        throw new IllegalArgumentException("Unknown input size: " + size);
+    }
+
+    public static String generate(int methods)
+    {
+        StringBuilder source = new StringBuilder();
+        source.append("package bench;\n\n");
+        source.append("import java.util.ArrayList;\n");
+        source.append("import java.util.List;\n\n");
+        source.append("/**\n * Generated with ").append(methods).append(" methods.\n */\n");
+        source.append("public class Generated\n{\n");
+        source.append("    private final List<String> names = new ArrayList<String>();\n");
+        source.append("    private int counter = 0;\n\n");
+        for (int i = 0; i < methods; ++i)
+        {
+            source.append("    // Method number ").append(i).append('\n');
+            source.append("    public int method").append(i).append("(int[] values, String prefix) throws Exception\n");
+            source.append("    {\n");
+            source.append("        int total = 0;\n");
+            source.append("        for (int i = 0; i < values.length; i++)\n");
+            source.append("        {\n");
+            source.append("            if (values[i] % 2 == 0) total += values[i] * ").append(i % 7 + 1).append(";\n");
+            source.append("            else total -= (values[i] >> 1);\n");
+            source.append("        }\n");
+            source.append("        String label = prefix + \":\" + total + \"/\" + values.length + \"#").append(i).append("\";\n");
+            source.append("        names.add(label.trim().toLowerCase().substring(0, label.length() - 1));\n");
+            source.append("        try\n");
+            source.append("        {\n");
+            source.append("            counter = total > 0 ? (int) Math.sqrt(total) : -total;\n");
+            source.append("        }\n");
+            source.append("        catch (RuntimeException e)\n");
+            source.append("        {\n");
+            source.append("            throw new Exception(\"method").append(i).append(" failed\", e);\n");
+            source.append("        }\n");
+            source.append("        return counter + names.size();\n");
+            source.append("    }\n\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package ast.benchmarks;
+
+import ast.MinifierEngine;
+import ast.MinifyOption;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end minification through the syntax tree versus straight from the token stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenPathBenchmark
+{
+    private static final Set<MinifyOption> TOKENS_ONLY = EnumSet.of(MinifyOption.TOKENS_ONLY);
+
+    @Param({SyntheticSources.SMALL, SyntheticSources.MEDIUM, SyntheticSources.LARGE})
+    public String size;
+
+    private String source;
+    private MinifierEngine engine;
+
+    @Setup
+    public void setUp()
+    {
+        source = SyntheticSources.forSize(size);
+        engine = new MinifierEngine();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        engine.close();
+    }
+
+    @Benchmark
+    public String tree()
+    {
+        return engine.minify(source);
+    }
+
+    @Benchmark
+    public String tokens()
+    {
+        return engine.minify(source, TOKENS_ONLY);
+    }
+}
@@ -0,0 +1,49 @@
+package ast.benchmarks;
+
+import ast.ASTVisitor;
+import ast.MinifierEngine;
+import com.sun.tools.javac.tree.JCTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phase 2: the ASTVisitor.visitTopLevel traversal over a tree parsed once up front, writing to a
+ * sink that discards everything.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitBenchmark
+{
+    @Param({SyntheticSources.SMALL, SyntheticSources.MEDIUM, SyntheticSources.LARGE})
+    public String size;
+
+    private JCTree.JCCompilationUnit compilationUnit;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            compilationUnit = engine.parse(SyntheticSources.forSize(size));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    @Benchmark
+    public ASTVisitor.Processor visit()
+    {
+        ASTVisitor.Processor processor = new ASTVisitor.Processor(new DiscardingSink());
+        new ASTVisitor(processor).visitTopLevel(compilationUnit);
+        return processor;
+    }
+}
@@ -1,15 +1,17 @@
 package ast;
 
+import com.google.common.hash.HashCode;
 import com.sun.source.tree.Tree;
-import com.sun.tools.javac.parser.Parser;
-import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.code.Flags;
 import com.sun.tools.javac.tree.JCTree;
-import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.Convert;
 import com.sun.tools.javac.util.Name;
 
-import javax.lang.model.element.Modifier;
-import javax.tools.*;
+import javax.lang.model.type.TypeKind;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,23 +26,31 @@ public class ASTVisitor extends JCTree.Visitor
 
     public static String minify(String javaCode)
     {
-        Context context = new Context();
-
-        // http://docs.oracle.com/javase/7/docs/api/javax/tools/StandardJavaFileManager.html
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
-        StandardJavaFileManager fm = ToolProvider.getSystemJavaCompiler().getStandardFileManager(diagnostics, null, null);
-        context.put(JavaFileManager.class, fm);
-
-        Parser.Factory parserFactory = Parser.Factory.instance(context);
-        Scanner.Factory scannerFactory = Scanner.Factory.instance(context);
-
-        Scanner scanner = scannerFactory.newScanner(javaCode);
-        Parser parser = parserFactory.newParser(scanner, true, true);
-        JCTree.JCCompilationUnit compilationUnit = parser.compilationUnit();
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.minify(javaCode);
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
 
-        ASTVisitor visitor = new ASTVisitor();
-        visitor.visitTopLevel(compilationUnit);
-        return visitor.processor.toString();
+    /**
+     * @see MinifierEngine#fingerprint(CharSequence)
+     */
+    public static HashCode fingerprint(String javaCode)
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.fingerprint(javaCode);
+        }
+        finally
+        {
+            engine.close();
+        }
     }
 
     public static class Processor
@@ -48,17 +58,44 @@ public class ASTVisitor extends JCTree.Visitor
         private List<Name> nestedClasses = new ArrayList<Name>();
         public Name getCurrentClass() { return nestedClasses.get(nestedClasses.size() - 1); }
         private boolean lastIsKeyword = false;
-        private StringBuilder stringBuilder = new StringBuilder();
+        private char lastSymbolEnd = 0;
+        private final Sink sink;
+        private char[] nameChars = new char[64];
+
+        public Processor() { this(Sink.forString()); }
+        public Processor(Sink sink) { this.sink = sink; }
 
-        private void printSym(Object toPrint)
+        public Sink getSink() { return sink; }
+
+        // Signs need a space between them, or a - -b would print as a--b and a + ++b as a+++b.
+        private void separateSigns(char next)
+        {
+            if ((next == '+' || next == '-') && next == lastSymbolEnd) sink.append(' ');
+        }
+        private void printSym(String toPrint)
         {
-            stringBuilder.append(toPrint.toString());
+            separateSigns(toPrint.charAt(0));
+            sink.append(toPrint);
+            lastSymbolEnd = toPrint.charAt(toPrint.length() - 1);
             lastIsKeyword = false;
         }
-        private void printWord(Object toPrint)
+        private void printWord(String toPrint)
         {
-            if (lastIsKeyword) stringBuilder.append(" ");
-            stringBuilder.append(toPrint.toString());
+            if (lastIsKeyword) sink.append(' ');
+            else separateSigns(toPrint.charAt(0));
+            sink.append(toPrint);
+            lastSymbolEnd = 0;
+            lastIsKeyword = true;
+        }
+        // Decodes the name straight out of the name table, instead of building a String for every occurrence.
+        private void printWord(Name name)
+        {
+            if (lastIsKeyword) sink.append(' ');
+            int length = name.getByteLength();
+            if (nameChars.length < length) nameChars = new char[length];
+            int count = Convert.utf2chars(name.getByteArray(), name.getByteOffset(), nameChars, 0, length);
+            sink.append(nameChars, 0, count);
+            lastSymbolEnd = 0;
             lastIsKeyword = true;
         }
 
@@ -73,10 +110,118 @@ public class ASTVisitor extends JCTree.Visitor
         public void processOpenParenthesis() { printSym("("); }
         public void processSymbol(String symbol) { printSym(symbol); }
 
-        public String toString() { return stringBuilder.toString(); }
+        public String toString() { return sink.toString(); }
+    }
+
+    // Operator token for each Tree.Kind, indexed by ordinal.
+    private static final String[] OPERATORS = new String[Tree.Kind.values().length];
+    static
+    {
+        OPERATORS[Tree.Kind.BITWISE_COMPLEMENT.ordinal()] = "~";
+        OPERATORS[Tree.Kind.PLUS.ordinal()] = "+";
+        OPERATORS[Tree.Kind.UNARY_PLUS.ordinal()] = "+";
+        OPERATORS[Tree.Kind.MINUS.ordinal()] = "-";
+        OPERATORS[Tree.Kind.UNARY_MINUS.ordinal()] = "-";
+        OPERATORS[Tree.Kind.MULTIPLY.ordinal()] = "*";
+        OPERATORS[Tree.Kind.DIVIDE.ordinal()] = "/";
+        OPERATORS[Tree.Kind.REMAINDER.ordinal()] = "%";
+        OPERATORS[Tree.Kind.LESS_THAN.ordinal()] = "<";
+        OPERATORS[Tree.Kind.GREATER_THAN.ordinal()] = ">";
+        OPERATORS[Tree.Kind.LESS_THAN_EQUAL.ordinal()] = "<=";
+        OPERATORS[Tree.Kind.GREATER_THAN_EQUAL.ordinal()] = ">=";
+        OPERATORS[Tree.Kind.EQUAL_TO.ordinal()] = "==";
+        OPERATORS[Tree.Kind.NOT_EQUAL_TO.ordinal()] = "!=";
+        OPERATORS[Tree.Kind.AND.ordinal()] = "&";
+        OPERATORS[Tree.Kind.XOR.ordinal()] = "^";
+        OPERATORS[Tree.Kind.OR.ordinal()] = "|";
+        OPERATORS[Tree.Kind.LOGICAL_COMPLEMENT.ordinal()] = "!";
+        OPERATORS[Tree.Kind.CONDITIONAL_AND.ordinal()] = "&&";
+        OPERATORS[Tree.Kind.CONDITIONAL_OR.ordinal()] = "||";
+        OPERATORS[Tree.Kind.MULTIPLY_ASSIGNMENT.ordinal()] = "*=";
+        OPERATORS[Tree.Kind.DIVIDE_ASSIGNMENT.ordinal()] = "/=";
+        OPERATORS[Tree.Kind.REMAINDER_ASSIGNMENT.ordinal()] = "%=";
+        OPERATORS[Tree.Kind.PLUS_ASSIGNMENT.ordinal()] = "+=";
+        OPERATORS[Tree.Kind.MINUS_ASSIGNMENT.ordinal()] = "-=";
+        OPERATORS[Tree.Kind.LEFT_SHIFT.ordinal()] = "<<";
+        OPERATORS[Tree.Kind.RIGHT_SHIFT.ordinal()] = ">>";
+        OPERATORS[Tree.Kind.UNSIGNED_RIGHT_SHIFT.ordinal()] = ">>>";
+        OPERATORS[Tree.Kind.LEFT_SHIFT_ASSIGNMENT.ordinal()] = "<<=";
+        OPERATORS[Tree.Kind.RIGHT_SHIFT_ASSIGNMENT.ordinal()] = ">>=";
+        OPERATORS[Tree.Kind.UNSIGNED_RIGHT_SHIFT_ASSIGNMENT.ordinal()] = ">>>=";
+        OPERATORS[Tree.Kind.AND_ASSIGNMENT.ordinal()] = "&=";
+        OPERATORS[Tree.Kind.XOR_ASSIGNMENT.ordinal()] = "^=";
+        OPERATORS[Tree.Kind.OR_ASSIGNMENT.ordinal()] = "|=";
+        OPERATORS[Tree.Kind.PREFIX_INCREMENT.ordinal()] = "++";
+        OPERATORS[Tree.Kind.POSTFIX_INCREMENT.ordinal()] = "++";
+        OPERATORS[Tree.Kind.PREFIX_DECREMENT.ordinal()] = "--";
+        OPERATORS[Tree.Kind.POSTFIX_DECREMENT.ordinal()] = "--";
+        OPERATORS[Tree.Kind.UNBOUNDED_WILDCARD.ordinal()] = "?";
+        OPERATORS[Tree.Kind.EXTENDS_WILDCARD.ordinal()] = "?";
+        OPERATORS[Tree.Kind.SUPER_WILDCARD.ordinal()] = "?";
+    }
+
+    // Modifier flags and their keywords, in the javax.lang.model Modifier order that getFlags() lists them in.
+    private static final long[] MODIFIER_FLAGS = {
+            Flags.PUBLIC, Flags.PROTECTED, Flags.PRIVATE, Flags.ABSTRACT, Flags.STATIC, Flags.FINAL,
+            Flags.TRANSIENT, Flags.VOLATILE, Flags.SYNCHRONIZED, Flags.NATIVE, Flags.STRICTFP };
+    private static final String[] MODIFIER_KEYWORDS = {
+            "public", "protected", "private", "abstract", "static", "final",
+            "transient", "volatile", "synchronized", "native", "strictfp" };
+
+    // Keyword for each primitive TypeKind, indexed by ordinal.
+    private static final String[] PRIMITIVE_KEYWORDS = new String[TypeKind.values().length];
+    static
+    {
+        for (TypeKind kind : TypeKind.values())
+        {
+            if (kind.isPrimitive() || kind == TypeKind.VOID) PRIMITIVE_KEYWORDS[kind.ordinal()] = kind.toString().toLowerCase();
+        }
+    }
+
+    private final Processor processor;
+    private final boolean compactLiterals;
+    private final ArrayDeque<JCTree.JCExpression> leftSpine = new ArrayDeque<JCTree.JCExpression>();
+
+    public ASTVisitor() { this(new Processor()); }
+    public ASTVisitor(Processor processor) { this(processor, false); }
+    /**
+     * @param compactLiterals print literals in their shortest spelling; see {@link LiteralCompactor}
+     */
+    public ASTVisitor(Processor processor, boolean compactLiterals)
+    {
+        this.processor = processor;
+        this.compactLiterals = compactLiterals;
+    }
+
+    public Processor getProcessor() { return processor; }
+
+    /**
+     * Visits a child node through its own accept method, so each node dispatches straight to the
+     * matching visitX method with one virtual call and no cast. Node types that have no visitX
+     * override fall through to {@link #visitTree}.
+     */
+    protected void scan(JCTree jcTree)
+    {
+        if (jcTree != null) jcTree.accept(this);
+    }
+
+    /**
+     * Only reached for node types that have no visitX override, which are rejected. Before
+     * dispatch went through {@link #scan}, this method dispatched on getKind(); it still ignores
+     * null as it did then, but no longer visits supported nodes, so subclasses should visit
+     * children with scan instead.
+     */
+    @Override
+    public void visitTree(JCTree jcTree)
+    {
+        if (jcTree == null) return;
+        throw new IllegalArgumentException("Unhandled kind " + jcTree.getKind().toString());
     }
 
-    private Processor processor = new Processor();
+    @Override
+    public void visitSkip(JCTree.JCSkip jcSkip)
+    {
+    }
 
     private boolean isPrefix(Tree.Kind operatorType)
     {
@@ -117,7 +262,7 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitAnnotation(JCTree.JCAnnotation jcAnnotation)
     {
         processor.processSymbol("@");
-        visitTree(jcAnnotation.getAnnotationType());
+        scan(jcAnnotation.getAnnotationType());
         List<JCTree.JCExpression> arguments = jcAnnotation.getArguments();
         if (arguments != null && arguments.size() > 0)
         {
@@ -130,19 +275,11 @@ public class ASTVisitor extends JCTree.Visitor
     @Override
     public void visitApply(JCTree.JCMethodInvocation jcMethodInvocation)
     {
-        JCTree methodSelect = jcMethodInvocation.getMethodSelect();
-        if (methodSelect instanceof JCTree.JCFieldAccess)
-        {
-            JCTree.JCFieldAccess fieldAccess = (JCTree.JCFieldAccess) methodSelect;
-            visitSelect(fieldAccess, jcMethodInvocation.getTypeArguments());
-        }
-        else
-        {
-            visitTree(methodSelect);
-            if (jcMethodInvocation.getTypeArguments().size() > 0)
-                throw new IllegalArgumentException("Haven't implemented type arguments yet");
-        }
+        visitLeftSpine(jcMethodInvocation);
+    }
 
+    private void visitArguments(JCTree.JCMethodInvocation jcMethodInvocation)
+    {
         processor.processOpenParenthesis();
         List<JCTree.JCExpression> arguments = jcMethodInvocation.getArguments();
         if (arguments != null)
@@ -158,31 +295,29 @@ public class ASTVisitor extends JCTree.Visitor
         if (jcAssert.getDetail() != null) throw new IllegalArgumentException("detail not implemented yet");
 
         processor.processKeyword("assert");
-        visitTree(jcAssert.getCondition());
+        scan(jcAssert.getCondition());
     }
 
     @Override
     public void visitAssign(JCTree.JCAssign jcAssign)
     {
-        visitTree(jcAssign.getVariable());
+        scan(jcAssign.getVariable());
         processor.processSymbol("=");
-        visitTree(jcAssign.getExpression());
+        scan(jcAssign.getExpression());
     }
 
     @Override
     public void visitAssignop(JCTree.JCAssignOp jcAssignOp)
     {
-        visitTree(jcAssignOp.getVariable());
+        scan(jcAssignOp.getVariable());
         visitOperator(jcAssignOp.getKind());
-        visitTree(jcAssignOp.getExpression());
+        scan(jcAssignOp.getExpression());
     }
 
     @Override
     public void visitBinary(JCTree.JCBinary jcBinary)
     {
-        visitTree(jcBinary.getLeftOperand());
-        visitOperator(jcBinary.getKind());
-        visitTree(jcBinary.getRightOperand());
+        visitLeftSpine(jcBinary);
     }
 
     @Override
@@ -213,7 +348,7 @@ public class ASTVisitor extends JCTree.Visitor
         else
         {
             processor.processKeyword("case");
-            visitTree(jcCase.getExpression());
+            scan(jcCase.getExpression());
         }
         processor.processSymbol(":");
 
@@ -253,7 +388,7 @@ public class ASTVisitor extends JCTree.Visitor
         if (jcClassDecl.getExtendsClause() != null)
         {
             processor.processKeyword("extends");
-            visitTree(jcClassDecl.getExtendsClause());
+            scan(jcClassDecl.getExtendsClause());
         }
 
         List<JCTree.JCExpression> interfaces = jcClassDecl.getImplementsClause();
@@ -274,7 +409,7 @@ public class ASTVisitor extends JCTree.Visitor
         processor.processOpenBlock();
         for (JCTree member : members)
         {
-            visitTree(member);
+            scan(member);
             if (member.getKind() == Tree.Kind.VARIABLE ||
                     (member.getKind() == Tree.Kind.METHOD && ((JCTree.JCMethodDecl) member).getBody() == null))
             {
@@ -287,11 +422,11 @@ public class ASTVisitor extends JCTree.Visitor
     @Override
     public void visitConditional(JCTree.JCConditional jcConditional)
     {
-        visitTree(jcConditional.getCondition());
+        scan(jcConditional.getCondition());
         processor.processSymbol("?");
-        visitTree(jcConditional.getTrueExpression());
+        scan(jcConditional.getTrueExpression());
         processor.processSymbol(":");
-        visitTree(jcConditional.getFalseExpression());
+        scan(jcConditional.getFalseExpression());
     }
 
     @Override
@@ -305,17 +440,17 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitDoLoop(JCTree.JCDoWhileLoop jcDoWhileLoop)
     {
         processor.processKeyword("do");
-        visitTree(jcDoWhileLoop.getStatement());
+        scan(jcDoWhileLoop.getStatement());
         if (needsSemicolon(jcDoWhileLoop.getStatement())) processor.processSymbol(";");
         processor.processKeyword("while");
-        visitTree(jcDoWhileLoop.getCondition());
+        scan(jcDoWhileLoop.getCondition());
         processor.processSymbol(";");
     }
 
     @Override
     public void visitExec(JCTree.JCExpressionStatement jcExpressionStatement)
     {
-        visitTree(jcExpressionStatement.getExpression());
+        scan(jcExpressionStatement.getExpression());
     }
 
     @Override
@@ -325,9 +460,9 @@ public class ASTVisitor extends JCTree.Visitor
         processor.processOpenParenthesis();
         visitVarDef(jcEnhancedForLoop.getVariable());
         processor.processSymbol(":");
-        visitTree(jcEnhancedForLoop.getExpression());
+        scan(jcEnhancedForLoop.getExpression());
         processor.processCloseParenthesis();
-        visitTree(jcEnhancedForLoop.getStatement());
+        scan(jcEnhancedForLoop.getStatement());
         if (needsSemicolon(jcEnhancedForLoop.getStatement())) processor.processSymbol(";");
     }
 
@@ -340,24 +475,24 @@ public class ASTVisitor extends JCTree.Visitor
         List<JCTree.JCStatement> initializers = jcForLoop.getInitializer();
         if (initializers.size() == 1)
         {
-            visitTree(initializers.get(0));
+            scan(initializers.get(0));
         }
         else if (initializers.size() > 1) throw new IllegalArgumentException("Too many initializers: "+initializers.size());
         processor.processSymbol(";");
 
-        visitTree(jcForLoop.getCondition());
+        scan(jcForLoop.getCondition());
         processor.processSymbol(";");
 
         List<JCTree.JCExpressionStatement> updates = jcForLoop.getUpdate();
         if (updates.size() == 1)
         {
-            visitTree(updates.get(0).getExpression());
+            scan(updates.get(0).getExpression());
         }
         else if (initializers.size() > 1) throw new IllegalArgumentException("Too many initializers: "+initializers.size());
 
         processor.processCloseParenthesis();
 
-        visitTree(jcForLoop.getStatement());
+        scan(jcForLoop.getStatement());
         if (needsSemicolon(jcForLoop.getStatement())) processor.processSymbol(";");
     }
 
@@ -371,17 +506,17 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitIf(JCTree.JCIf jcIf)
     {
         processor.processKeyword("if");
-        visitTree(jcIf.getCondition());
+        scan(jcIf.getCondition());
 
         JCTree.JCStatement thenStatement = jcIf.getThenStatement();
-        visitTree(thenStatement);
+        scan(thenStatement);
         if (needsSemicolon(thenStatement)) processor.processSymbol(";");
 
         if (jcIf.getElseStatement() != null)
         {
             JCTree.JCStatement elseStatement = jcIf.getElseStatement();
             processor.processKeyword("else");
-            visitTree(elseStatement);
+            scan(elseStatement);
             if (needsSemicolon(elseStatement)) processor.processSymbol(";");
         }
     }
@@ -394,23 +529,101 @@ public class ASTVisitor extends JCTree.Visitor
         {
             processor.processKeyword("static");
         }
-        visitTree(jcImport.getQualifiedIdentifier());
+        scan(jcImport.getQualifiedIdentifier());
         processor.processSymbol(";");
     }
 
     @Override
     public void visitIndexed(JCTree.JCArrayAccess jcArrayAccess)
     {
-        visitTree(jcArrayAccess.getExpression());
+        scan(jcArrayAccess.getExpression());
         processor.processSymbol("[");
-        visitTree(jcArrayAccess.getIndex());
+        scan(jcArrayAccess.getIndex());
         processor.processSymbol("]");
     }
 
+    /**
+     * Binary operators, parentheses, method calls and field accesses all start with their left
+     * operand (or open a parenthesis and then do). Generated code chains thousands of them, as
+     * in long string concatenations or fluent builders, so instead of recursing we walk down the
+     * left spine pushing each node on an explicit stack, print the innermost operand, and then
+     * pop the nodes to print what follows their left operand. Only right operands and arguments
+     * recurse, and those are rarely deep.
+     */
+    private void visitLeftSpine(JCTree.JCExpression expression)
+    {
+        int base = leftSpine.size();
+        JCTree.JCExpression node = expression;
+        while (true)
+        {
+            if (node instanceof JCTree.JCBinary)
+            {
+                leftSpine.push(node);
+                node = ((JCTree.JCBinary) node).getLeftOperand();
+            }
+            else if (node instanceof JCTree.JCParens)
+            {
+                processor.processOpenParenthesis();
+                leftSpine.push(node);
+                node = ((JCTree.JCParens) node).getExpression();
+            }
+            else if (node instanceof JCTree.JCMethodInvocation)
+            {
+                JCTree.JCMethodInvocation jcMethodInvocation = (JCTree.JCMethodInvocation) node;
+                leftSpine.push(node);
+                node = jcMethodInvocation.getMethodSelect();
+                if (node instanceof JCTree.JCFieldAccess)
+                {
+                    node = ((JCTree.JCFieldAccess) node).getExpression();
+                }
+                else if (jcMethodInvocation.getTypeArguments().size() > 0)
+                {
+                    throw new IllegalArgumentException("Haven't implemented type arguments yet");
+                }
+            }
+            else if (node instanceof JCTree.JCFieldAccess)
+            {
+                leftSpine.push(node);
+                node = ((JCTree.JCFieldAccess) node).getExpression();
+            }
+            else break;
+        }
+
+        scan(node);
+
+        while (leftSpine.size() > base)
+        {
+            JCTree.JCExpression parent = leftSpine.pop();
+            if (parent instanceof JCTree.JCBinary)
+            {
+                visitOperator(parent.getKind());
+                scan(((JCTree.JCBinary) parent).getRightOperand());
+            }
+            else if (parent instanceof JCTree.JCParens)
+            {
+                processor.processCloseParenthesis();
+            }
+            else if (parent instanceof JCTree.JCMethodInvocation)
+            {
+                JCTree.JCMethodInvocation jcMethodInvocation = (JCTree.JCMethodInvocation) parent;
+                JCTree methodSelect = jcMethodInvocation.getMethodSelect();
+                if (methodSelect instanceof JCTree.JCFieldAccess)
+                {
+                    visitSelectedMember((JCTree.JCFieldAccess) methodSelect, jcMethodInvocation.getTypeArguments());
+                }
+                visitArguments(jcMethodInvocation);
+            }
+            else
+            {
+                visitSelectedMember((JCTree.JCFieldAccess) parent, Collections.<JCTree>emptyList());
+            }
+        }
+    }
+
     @Override
     public void visitLiteral(JCTree.JCLiteral jcLiteral)
     {
-        processor.processLiteral(jcLiteral.toString());
+        processor.processLiteral(compactLiterals ? LiteralCompactor.spell(jcLiteral) : jcLiteral.toString());
     }
 
     @Override
@@ -427,9 +640,9 @@ public class ASTVisitor extends JCTree.Visitor
 
         if (jcMethodDecl.getReturnType() != null)
         {
-            visitTree(jcMethodDecl.getReturnType());
+            scan(jcMethodDecl.getReturnType());
         }
-        if (jcMethodDecl.getName().toString().equals("<init>")) processor.processName(processor.getCurrentClass());
+        if (TreeInfo.isConstructor(jcMethodDecl)) processor.processName(processor.getCurrentClass());
         else processor.processName(jcMethodDecl.getName());
 
         processor.processOpenParenthesis();
@@ -462,9 +675,10 @@ public class ASTVisitor extends JCTree.Visitor
             visitAnnotation(annotation);
         }
 
-        for (Modifier modifier : jcModifiers.getFlags())
+        long flags = jcModifiers.flags;
+        for (int i = 0; i < MODIFIER_FLAGS.length; ++i)
         {
-            processor.processKeyword(modifier.toString());
+            if ((flags & MODIFIER_FLAGS[i]) != 0) processor.processKeyword(MODIFIER_KEYWORDS[i]);
         }
     }
 
@@ -479,18 +693,18 @@ public class ASTVisitor extends JCTree.Visitor
             JCTree.JCExpression arrayType = jcNewArray.getType();
             if (arrayType instanceof JCTree.JCArrayTypeTree) // This is because Java multidimensional syntax is backwards from what a parse tree would expect
             {
-                visitTree(((JCTree.JCArrayTypeTree) arrayType).getType());
+                scan(((JCTree.JCArrayTypeTree) arrayType).getType());
                 for (JCTree.JCExpression dimension : dimensions)
                 {
                     processor.processSymbol("[");
-                    visitTree(dimension);
+                    scan(dimension);
                     processor.processSymbol("]");
                 }
                 processor.processSymbol("[]");
             }
             else
             {
-                visitTree(jcNewArray.getType());
+                scan(jcNewArray.getType());
                 if (dimensions.size() == 0)
                 {
                     processor.processSymbol("[]");
@@ -498,7 +712,7 @@ public class ASTVisitor extends JCTree.Visitor
                 for (JCTree.JCExpression dimension : dimensions)
                 {
                     processor.processSymbol("[");
-                    visitTree(dimension);
+                    scan(dimension);
                     processor.processSymbol("]");
                 }
             }
@@ -519,12 +733,12 @@ public class ASTVisitor extends JCTree.Visitor
     {
         if (jcNewClass.getEnclosingExpression() != null)
         {
-            visitTree(jcNewClass.getEnclosingExpression());
+            scan(jcNewClass.getEnclosingExpression());
             processor.processSymbol(".");
         }
 
         processor.processKeyword("new");
-        visitTree(jcNewClass.getIdentifier());
+        scan(jcNewClass.getIdentifier());
         processor.processOpenParenthesis();
         List<JCTree.JCExpression> arguments = jcNewClass.getArguments();
         if (arguments != null)
@@ -544,71 +758,32 @@ public class ASTVisitor extends JCTree.Visitor
 
     private void visitOperator(Tree.Kind kind)
     {
-        switch (kind)
-        {
-            case BITWISE_COMPLEMENT: processor.processSymbol("~"); break;
-            case PLUS: case UNARY_PLUS: processor.processSymbol("+"); break;
-            case MINUS: case UNARY_MINUS: processor.processSymbol("-"); break;
-            case MULTIPLY: processor.processSymbol("*"); break;
-            case DIVIDE: processor.processSymbol("/"); break;
-            case REMAINDER: processor.processSymbol("%"); break;
-            case LESS_THAN: processor.processSymbol("<"); break;
-            case GREATER_THAN: processor.processSymbol(">"); break;
-            case LESS_THAN_EQUAL: processor.processSymbol("<="); break;
-            case GREATER_THAN_EQUAL: processor.processSymbol(">="); break;
-            case EQUAL_TO: processor.processSymbol("=="); break;
-            case NOT_EQUAL_TO: processor.processSymbol("!="); break;
-            case AND: processor.processSymbol("&&"); break;
-            case XOR: processor.processSymbol("^"); break;
-            case OR: processor.processSymbol("||"); break;
-            case LOGICAL_COMPLEMENT: processor.processSymbol("!"); break;
-            case CONDITIONAL_AND: processor.processSymbol("&&"); break;
-            case CONDITIONAL_OR: processor.processSymbol("||"); break;
-            case MULTIPLY_ASSIGNMENT: processor.processSymbol("*="); break;
-            case DIVIDE_ASSIGNMENT: processor.processSymbol("/="); break;
-            case REMAINDER_ASSIGNMENT: processor.processSymbol("%="); break;
-            case PLUS_ASSIGNMENT: processor.processSymbol("+="); break;
-            case MINUS_ASSIGNMENT: processor.processSymbol("-="); break;
-            case LEFT_SHIFT: processor.processSymbol("<<"); break;
-            case RIGHT_SHIFT: processor.processSymbol(">>"); break;
-            case UNSIGNED_RIGHT_SHIFT: processor.processSymbol(">>>"); break;
-            case LEFT_SHIFT_ASSIGNMENT: processor.processSymbol("<<="); break;
-            case RIGHT_SHIFT_ASSIGNMENT: processor.processSymbol(">>="); break;
-            case UNSIGNED_RIGHT_SHIFT_ASSIGNMENT: processor.processSymbol(">>>="); break;
-            case AND_ASSIGNMENT: processor.processSymbol("&="); break;
-            case XOR_ASSIGNMENT: processor.processSymbol("^="); break;
-            case OR_ASSIGNMENT: processor.processSymbol("|="); break;
-            case PREFIX_INCREMENT: case POSTFIX_INCREMENT: processor.processSymbol("++"); break;
-            case PREFIX_DECREMENT: case POSTFIX_DECREMENT: processor.processSymbol("--"); break;
-            case UNBOUNDED_WILDCARD: case EXTENDS_WILDCARD: case SUPER_WILDCARD: processor.processSymbol("?"); break;
-            default: throw new IllegalArgumentException("Unrecognized operator "+kind.toString());
-        }
+        String operator = OPERATORS[kind.ordinal()];
+        if (operator == null) throw new IllegalArgumentException("Unrecognized operator "+kind.toString());
+        processor.processSymbol(operator);
     }
 
     @Override
     public void visitParens(JCTree.JCParens jcParens)
     {
-        processor.processOpenParenthesis();
-        visitTree(jcParens.getExpression());
-        processor.processCloseParenthesis();
+        visitLeftSpine(jcParens);
     }
 
     @Override
     public void visitReturn(JCTree.JCReturn jcReturn)
     {
         processor.processKeyword("return");
-        visitTree(jcReturn.getExpression());
+        scan(jcReturn.getExpression());
     }
 
     @Override
     public void visitSelect(JCTree.JCFieldAccess jcFieldAccess)
     {
-        visitSelect(jcFieldAccess, new ArrayList<JCTree>());
+        visitLeftSpine(jcFieldAccess);
     }
 
-    private void visitSelect(JCTree.JCFieldAccess jcFieldAccess, List<? extends JCTree> typeArguments)
+    private void visitSelectedMember(JCTree.JCFieldAccess jcFieldAccess, List<? extends JCTree> typeArguments)
     {
-        visitTree(jcFieldAccess.selected);
         processor.processSymbol(".");
         if (typeArguments.size() > 0)
         {
@@ -622,7 +797,7 @@ public class ASTVisitor extends JCTree.Visitor
     private void visitStatements(List<JCTree.JCStatement> statements) {
         for (JCTree.JCStatement statement : statements)
         {
-            visitTree(statement);
+            scan(statement);
             if (needsSemicolon(statement)) processor.processSymbol(";");
         }
     }
@@ -631,7 +806,7 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitSwitch(JCTree.JCSwitch jcSwitch)
     {
         processor.processKeyword("switch");
-        visitTree(jcSwitch.getExpression());
+        scan(jcSwitch.getExpression());
         processor.processOpenBlock();
 
         for (JCTree.JCCase jcCase : jcSwitch.getCases())
@@ -646,7 +821,7 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitSynchronized(JCTree.JCSynchronized jcSynchronized)
     {
         processor.processKeyword("synchronized");
-        visitTree(jcSynchronized.getExpression());
+        scan(jcSynchronized.getExpression());
         visitBlock(jcSynchronized.getBlock());
     }
 
@@ -654,7 +829,7 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitThrow(JCTree.JCThrow jcThrow)
     {
         processor.processKeyword("throw");
-        visitTree(jcThrow.getExpression());
+        scan(jcThrow.getExpression());
     }
 
     @Override
@@ -666,7 +841,7 @@ public class ASTVisitor extends JCTree.Visitor
         }
 
         processor.processKeyword("package");
-        visitTree(compilationUnit.getPackageName());
+        scan(compilationUnit.getPackageName());
         processor.processSymbol(";");
 
         for (JCTree.JCImport jcImport : compilationUnit.getImports())
@@ -676,127 +851,7 @@ public class ASTVisitor extends JCTree.Visitor
 
         for (JCTree jcTree : compilationUnit.getTypeDecls())
         {
-            visitTree(jcTree);
-        }
-    }
-
-    @Override
-    public void visitTree(JCTree jcTree)
-    {
-        if (jcTree == null) return;
-        switch (jcTree.getKind()) {
-            case ANNOTATION: this.visitAnnotation((JCTree.JCAnnotation) jcTree); break;
-            case ARRAY_ACCESS: this.visitIndexed((JCTree.JCArrayAccess) jcTree); break;
-            case ARRAY_TYPE: this.visitTypeArray((JCTree.JCArrayTypeTree) jcTree); break;
-            case ASSERT: this.visitAssert((JCTree.JCAssert) jcTree); break;
-            case ASSIGNMENT: this.visitAssign((JCTree.JCAssign) jcTree); break;
-            case BLOCK: this.visitBlock((JCTree.JCBlock) jcTree); break;
-            case BREAK: this.visitBreak((JCTree.JCBreak) jcTree); break;
-            case CLASS: this.visitClassDef((JCTree.JCClassDecl) jcTree); break;
-            case CONDITIONAL_EXPRESSION: this.visitConditional((JCTree.JCConditional) jcTree); break;
-            case CONTINUE: this.visitContinue((JCTree.JCContinue) jcTree); break;
-            case DO_WHILE_LOOP: this.visitDoLoop((JCTree.JCDoWhileLoop) jcTree); break;
-            case ENHANCED_FOR_LOOP: this.visitForeachLoop((JCTree.JCEnhancedForLoop) jcTree); break;
-            case EMPTY_STATEMENT: break;
-            case EXPRESSION_STATEMENT: this.visitExec((JCTree.JCExpressionStatement) jcTree); break;
-            case FOR_LOOP: this.visitForLoop((JCTree.JCForLoop) jcTree); break;
-            case IDENTIFIER: this.visitIdent((JCTree.JCIdent) jcTree); break;
-            case IF: this.visitIf((JCTree.JCIf) jcTree); break;
-            case IMPORT: this.visitImport((JCTree.JCImport) jcTree); break;
-            case INSTANCE_OF: this.visitTypeTest((JCTree.JCInstanceOf) jcTree); break;
-            case MEMBER_SELECT: this.visitSelect((JCTree.JCFieldAccess) jcTree); break;
-            case METHOD: this.visitMethodDef((JCTree.JCMethodDecl) jcTree); break;
-            case METHOD_INVOCATION: this.visitApply((JCTree.JCMethodInvocation) jcTree); break;
-            case MODIFIERS: this.visitModifiers((JCTree.JCModifiers) jcTree); break;
-            case NEW_ARRAY: this.visitNewArray((JCTree.JCNewArray) jcTree); break;
-            case NEW_CLASS: this.visitNewClass((JCTree.JCNewClass) jcTree); break;
-            case PARAMETERIZED_TYPE: this.visitTypeApply((JCTree.JCTypeApply) jcTree); break;
-            case PARENTHESIZED: this.visitParens((JCTree.JCParens) jcTree); break;
-            case PRIMITIVE_TYPE: this.visitTypeIdent((JCTree.JCPrimitiveTypeTree) jcTree); break;
-            case RETURN: this.visitReturn((JCTree.JCReturn) jcTree); break;
-            case SWITCH: this.visitSwitch((JCTree.JCSwitch) jcTree); break;
-            case SYNCHRONIZED: this.visitSynchronized((JCTree.JCSynchronized) jcTree); break;
-            case THROW: this.visitThrow((JCTree.JCThrow) jcTree); break;
-            case TRY: this.visitTry((JCTree.JCTry) jcTree); break;
-            case TYPE_CAST: this.visitTypeCast((JCTree.JCTypeCast) jcTree); break;
-            case TYPE_PARAMETER: this.visitTypeParameter((JCTree.JCTypeParameter) jcTree); break;
-            case VARIABLE: this.visitVarDef((JCTree.JCVariableDecl) jcTree); break;
-            case WHILE_LOOP: this.visitWhileLoop((JCTree.JCWhileLoop) jcTree); break;
-
-
-            case PLUS:
-            case MINUS:
-            case MULTIPLY:
-            case DIVIDE:
-            case REMAINDER:
-            case LESS_THAN:
-            case GREATER_THAN:
-            case LESS_THAN_EQUAL:
-            case GREATER_THAN_EQUAL:
-            case EQUAL_TO:
-            case NOT_EQUAL_TO:
-            case AND:
-            case XOR:
-            case OR:
-            case CONDITIONAL_AND:
-            case CONDITIONAL_OR:
-            case LEFT_SHIFT:
-            case RIGHT_SHIFT:
-            case UNSIGNED_RIGHT_SHIFT:
-                this.visitBinary((JCTree.JCBinary) jcTree);
-                break;
-
-            case INT_LITERAL:
-            case LONG_LITERAL:
-            case FLOAT_LITERAL:
-            case DOUBLE_LITERAL:
-            case BOOLEAN_LITERAL:
-            case CHAR_LITERAL:
-            case STRING_LITERAL:
-            case NULL_LITERAL:
-                this.visitLiteral((JCTree.JCLiteral) jcTree);
-                break;
-
-            case BITWISE_COMPLEMENT:
-            case UNARY_MINUS:
-            case UNARY_PLUS:
-            case LOGICAL_COMPLEMENT:
-            case PREFIX_INCREMENT:
-            case PREFIX_DECREMENT:
-            case POSTFIX_INCREMENT:
-            case POSTFIX_DECREMENT:
-                this.visitUnary((JCTree.JCUnary) jcTree);
-                break;
-
-            case MULTIPLY_ASSIGNMENT:
-            case DIVIDE_ASSIGNMENT:
-            case REMAINDER_ASSIGNMENT:
-            case PLUS_ASSIGNMENT:
-            case MINUS_ASSIGNMENT:
-            case LEFT_SHIFT_ASSIGNMENT:
-            case RIGHT_SHIFT_ASSIGNMENT:
-            case UNSIGNED_RIGHT_SHIFT_ASSIGNMENT:
-            case AND_ASSIGNMENT:
-            case XOR_ASSIGNMENT:
-            case OR_ASSIGNMENT:
-                this.visitAssignop((JCTree.JCAssignOp) jcTree);
-                break;
-
-            case UNBOUNDED_WILDCARD:
-            case EXTENDS_WILDCARD:
-            case SUPER_WILDCARD:
-                this.visitWildcard((JCTree.JCWildcard) jcTree);
-                break;
-
-
-            default:
-                throw new IllegalArgumentException("Unhandled kind " + jcTree.getKind().toString());
-//                    case LABELED_STATEMENT:
-//                        break;
-//                    case ERRONEOUS:
-//                        break;
-//                    case OTHER:
-//                        break;
+            scan(jcTree);
         }
     }
 
@@ -821,7 +876,7 @@ public class ASTVisitor extends JCTree.Visitor
     @Override
     public void visitTypeApply(JCTree.JCTypeApply jcTypeApply)
     {
-        visitTree(jcTypeApply.getType());
+        scan(jcTypeApply.getType());
         processor.processSymbol("<");
         List<JCTree.JCExpression> typeArguments = jcTypeApply.getTypeArguments();
         visitWithCommas(typeArguments);
@@ -831,7 +886,7 @@ public class ASTVisitor extends JCTree.Visitor
     @Override
     public void visitTypeArray(JCTree.JCArrayTypeTree jcArrayTypeTree)
     {
-        visitTree(jcArrayTypeTree.getType());
+        scan(jcArrayTypeTree.getType());
         processor.processSymbol("[]");
     }
 
@@ -839,15 +894,15 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitTypeCast(JCTree.JCTypeCast jcTypeCast)
     {
         processor.processOpenParenthesis();
-        visitTree(jcTypeCast.getType());
+        scan(jcTypeCast.getType());
         processor.processCloseParenthesis();
-        visitTree(jcTypeCast.getExpression());
+        scan(jcTypeCast.getExpression());
     }
 
     @Override
     public void visitTypeIdent(JCTree.JCPrimitiveTypeTree jcPrimitiveTypeTree)
     {
-        processor.processKeyword(jcPrimitiveTypeTree.getPrimitiveTypeKind().toString().toLowerCase());
+        processor.processKeyword(PRIMITIVE_KEYWORDS[jcPrimitiveTypeTree.getPrimitiveTypeKind().ordinal()]);
     }
 
     @Override
@@ -865,9 +920,9 @@ public class ASTVisitor extends JCTree.Visitor
     @Override
     public void visitTypeTest(JCTree.JCInstanceOf jcInstanceOf)
     {
-        visitTree(jcInstanceOf.getExpression());
+        scan(jcInstanceOf.getExpression());
         processor.processKeyword("instanceof");
-        visitTree(jcInstanceOf.getType());
+        scan(jcInstanceOf.getType());
     }
 
     @Override
@@ -876,11 +931,11 @@ public class ASTVisitor extends JCTree.Visitor
         if (isPrefix(jcUnary.getKind()))
         {
             visitOperator(jcUnary.getKind());
-            visitTree(jcUnary.getExpression());
+            scan(jcUnary.getExpression());
         }
         else
         {
-            visitTree(jcUnary.getExpression());
+            scan(jcUnary.getExpression());
             visitOperator(jcUnary.getKind());
         }
     }
@@ -889,13 +944,13 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitVarDef(JCTree.JCVariableDecl jcVariableDecl)
     {
         visitModifiers(jcVariableDecl.getModifiers());
-        visitTree(jcVariableDecl.vartype);
+        scan(jcVariableDecl.vartype);
         processor.processName(jcVariableDecl.getName());
 
         if (jcVariableDecl.getInitializer() != null)
         {
             processor.processSymbol("=");
-            visitTree(jcVariableDecl.getInitializer());
+            scan(jcVariableDecl.getInitializer());
         }
     }
 
@@ -903,8 +958,8 @@ public class ASTVisitor extends JCTree.Visitor
     public void visitWhileLoop(JCTree.JCWhileLoop jcWhileLoop)
     {
         processor.processKeyword("while");
-        visitTree(jcWhileLoop.getCondition());
-        visitTree(jcWhileLoop.getStatement());
+        scan(jcWhileLoop.getCondition());
+        scan(jcWhileLoop.getStatement());
         if (needsSemicolon(jcWhileLoop.getStatement())) processor.processSymbol(";");
     }
 
@@ -927,7 +982,7 @@ public class ASTVisitor extends JCTree.Visitor
             {
                 throw new IllegalArgumentException("can't handle bound");
             }
-            visitTree(jcWildcard.getBound());
+            scan(jcWildcard.getBound());
         }
     }
 
@@ -941,7 +996,7 @@ public class ASTVisitor extends JCTree.Visitor
         for (JCTree jcTree : jcTrees)
         {
             if (!isFirst) processor.processSymbol(separator);
-            visitTree(jcTree);
+            scan(jcTree);
             isFirst = false;
         }
     }
@@ -1,13 +1,178 @@
 package ast;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
 /**
- * Hello world!
- *
+ * Command-line batch minifier. Inputs are directories (every .java file under them), .jar or .zip
+ * archives (every .java entry), single .java files, and @files listing one such input per line.
+ * Output mirrors each file's path relative to its input; without -o nothing is written, which is
+ * handy for measuring throughput. An -o ending in .jar or .zip instead turns a single input archive
+ * into a minified archive, resources and all, without extracting it. With -s PORT, App instead runs
+ * a {@link MinifyServer} on the loopback interface until it is killed.
  */
 public class App 
 {
-    public static void main( String[] args )
+    private static final String USAGE =
+            "usage: ast.App [-o OUTPUT_DIR] [-t THREADS] [-c CHARSET] [-O OPTION,...] INPUT...\n" +
+            "       ast.App -o OUTPUT.jar [-t THREADS] [-c CHARSET] [-O OPTION,...] INPUT.jar\n" +
+            "       ast.App -s PORT [-t THREADS] [-c CHARSET]\n" +
+            "  INPUT is a directory, a .jar or .zip archive, a .java file, or @FILE listing inputs one per line";
+
+    public static void main( String[] args ) throws IOException
+    {
+        Path outputDirectory = null;
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Charset charset = Charset.defaultCharset();
+        Set<MinifyOption> options = EnumSet.noneOf(MinifyOption.class);
+        int i = 0;
+        try
+        {
+            for (; i < args.length && args[i].startsWith("-"); ++i)
+            {
+                String flag = args[i];
+                if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + flag);
+                String value = args[++i];
+                if (flag.equals("-o")) outputDirectory = Paths.get(value);
+                else if (flag.equals("-s")) port = Integer.parseInt(value);
+                else if (flag.equals("-t")) threads = Integer.parseInt(value);
+                else if (flag.equals("-c")) charset = Charset.forName(value);
+                else if (flag.equals("-O"))
+                {
+                    for (String option : value.split(","))
+                    {
+                        options.add(MinifyOption.valueOf(option.trim().toUpperCase(Locale.ROOT)));
+                    }
+                }
+                else throw new IllegalArgumentException("Unknown flag " + flag);
+            }
+            if (port >= 0 && i < args.length) throw new IllegalArgumentException("The server takes its inputs over HTTP");
+            if (port < 0 && i == args.length) throw new IllegalArgumentException("No inputs");
+            if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+            if (outputDirectory != null && isArchive(outputDirectory.toString()) && (args.length - i != 1 || !isArchive(args[i])))
+            {
+                throw new IllegalArgumentException("An archive can only be written from a single input archive");
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        if (port >= 0)
+        {
+            serve(port, threads, charset);
+            return;
+        }
+        if (outputDirectory != null && isArchive(outputDirectory.toString()))
+        {
+            minifyArchive(Paths.get(args[i]), outputDirectory, threads, charset, options);
+            return;
+        }
+
+        MinifyPipeline pipeline = new MinifyPipeline(threads, charset, options);
+        for (; i < args.length; ++i)
+        {
+            if (args[i].startsWith("@"))
+            {
+                List<String> lines = Files.readAllLines(Paths.get(args[i].substring(1)), charset);
+                for (String line : lines)
+                {
+                    if (!line.trim().isEmpty()) addInput(pipeline, line.trim());
+                }
+            }
+            else
+            {
+                addInput(pipeline, args[i]);
+            }
+        }
+
+        MinifyPipeline.Stats stats = null;
+        try
+        {
+            stats = pipeline.run(outputDirectory);
+        }
+        catch (IOException e)
+        {
+            // An input that can't be listed at all, as opposed to a single file that fails.
+            System.err.println("Could not read inputs: " + e);
+            System.exit(1);
+        }
+        for (String failure : stats.failures()) System.err.println("FAILED " + failure);
+        System.out.println(String.format(Locale.ROOT,
+                "Minified %d files (%.1f MB to %.1f MB) in %.2f s: %.0f files/s, %.1f MB/s, latency p50 %.2f ms, p99 %.2f ms",
+                stats.files(), stats.bytesRead() / 1048576.0, stats.bytesWritten() / 1048576.0, stats.elapsedNanos() / 1e9,
+                stats.filesPerSecond(), stats.megabytesPerSecond(),
+                stats.latencyPercentile(50) / 1e6, stats.latencyPercentile(99) / 1e6));
+        if (!stats.failures().isEmpty()) System.exit(1);
+    }
+
+    private static void serve(int port, int threads, Charset charset) throws IOException
+    {
+        final MinifyServer server = new MinifyServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), threads, charset);
+        Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    server.close();
+                }
+                catch (IOException e)
+                {
+                    // The JVM is exiting anyway.
+                }
+            }
+        });
+        server.start();
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/minify");
+    }
+
+    private static void minifyArchive(Path input, Path output, int threads, Charset charset, Set<MinifyOption> options)
+            throws IOException
+    {
+        long start = System.nanoTime();
+        List<String> unminified;
+        BatchMinifier batchMinifier = new BatchMinifier(threads, charset);
+        try
+        {
+            batchMinifier.setOptions(options);
+            unminified = new ArchiveMinifier(batchMinifier).minify(input, output);
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+        for (String entry : unminified) System.err.println("UNMINIFIED " + entry);
+        System.out.println(String.format(Locale.ROOT, "Minified %s (%.1f MB) into %s (%.1f MB) in %.2f s",
+                input, Files.size(input) / 1048576.0, output, Files.size(output) / 1048576.0, (System.nanoTime() - start) / 1e9));
+        if (!unminified.isEmpty()) System.exit(1);
+    }
+
+    private static boolean isArchive(String name)
+    {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        return lowerCase.endsWith(".jar") || lowerCase.endsWith(".zip");
+    }
+
+    private static void addInput(MinifyPipeline pipeline, String input)
     {
-        System.out.println( "Hello World!" );
+        Path path = Paths.get(input);
+        if (Files.isDirectory(path)) pipeline.addDirectory(path);
+        else if (isArchive(input)) pipeline.addArchive(path);
+        else pipeline.addFile(path, path.getFileName().toString());
     }
 }
@@ -0,0 +1,164 @@
+package ast;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Minifies the .java entries of a zip or jar archive, such as a -sources.jar, into a new archive
+ * without extracting anything to disk. Entries are read one at a time from the input stream, the
+ * .java ones are minified in parallel on a {@link BatchMinifier}, and everything is written out in
+ * the original order, resources unchanged. At most a fixed number of entries are in flight, so
+ * memory stays bounded however large the archive is.
+ *
+ * An entry that can't be minified is copied as it was and reported back with the reason, as
+ * "name: failure", rather than failing the whole archive.
+ */
+public class ArchiveMinifier
+{
+    private static class Pending
+    {
+        final ZipEntry entry;
+        final byte[] bytes;
+        final Future<String> minified;
+
+        Pending(ZipEntry entry, byte[] bytes, Future<String> minified)
+        {
+            this.entry = entry;
+            this.bytes = bytes;
+            this.minified = minified;
+        }
+    }
+
+    private final BatchMinifier batchMinifier;
+    private final int maxInFlight;
+
+    public ArchiveMinifier(BatchMinifier batchMinifier)
+    {
+        this(batchMinifier, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxInFlight how many entries may be read ahead of the one being written
+     */
+    public ArchiveMinifier(BatchMinifier batchMinifier, int maxInFlight)
+    {
+        this.batchMinifier = batchMinifier;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return the .java entries that were copied unminified, each with the reason
+     */
+    public List<String> minify(Path input, Path output) throws IOException
+    {
+        InputStream in = Files.newInputStream(input);
+        try
+        {
+            OutputStream out = Files.newOutputStream(output);
+            try
+            {
+                return minify(in, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads an archive from one stream and writes the minified archive to the other. Neither stream
+     * is closed.
+     *
+     * @return the .java entries that were copied unminified, each with the reason
+     */
+    public List<String> minify(InputStream input, OutputStream output) throws IOException
+    {
+        return minify(input, output, batchMinifier.options());
+    }
+
+    /**
+     * Like {@link #minify(InputStream, OutputStream)}, with options other than the batch's own.
+     */
+    public List<String> minify(InputStream input, OutputStream output, Set<MinifyOption> options) throws IOException
+    {
+        ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(input));
+        ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(output));
+        Deque<Pending> pending = new ArrayDeque<Pending>(maxInFlight);
+        List<String> unminified = new ArrayList<String>();
+        try
+        {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null)
+            {
+                byte[] bytes = ByteStreams.toByteArray(zipIn);
+                boolean isJava = !entry.isDirectory() && entry.getName().endsWith(".java");
+                pending.add(new Pending(entry, bytes, isJava ? batchMinifier.submit(bytes, options) : null));
+                if (pending.size() >= maxInFlight) write(pending.poll(), zipOut, unminified);
+            }
+            while (!pending.isEmpty()) write(pending.poll(), zipOut, unminified);
+            zipOut.finish();
+            zipOut.flush();
+        }
+        finally
+        {
+            for (Pending abandoned : pending)
+            {
+                if (abandoned.minified != null) abandoned.minified.cancel(false);
+            }
+        }
+        return unminified;
+    }
+
+    private void write(Pending pending, ZipOutputStream zipOut, List<String> unminified) throws IOException
+    {
+        byte[] bytes = pending.bytes;
+        if (pending.minified != null)
+        {
+            try
+            {
+                bytes = pending.minified.get().getBytes(batchMinifier.charset());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while minifying " + pending.entry.getName());
+            }
+            catch (ExecutionException e)
+            {
+                unminified.add(pending.entry.getName() + ": " + e.getCause());
+            }
+        }
+
+        // Sizes and CRCs are recomputed for the new contents, so only the descriptive fields carry over.
+        ZipEntry entry = new ZipEntry(pending.entry.getName());
+        entry.setTime(pending.entry.getTime());
+        entry.setComment(pending.entry.getComment());
+        entry.setExtra(pending.entry.getExtra());
+        zipOut.putNextEntry(entry);
+        zipOut.write(bytes);
+        zipOut.closeEntry();
+    }
+}
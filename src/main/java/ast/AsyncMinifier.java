@@ -0,0 +1,187 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous minification for services that see the same inputs many times at once, such as
+ * popular shared files. Concurrent requests for the same code and options are coalesced by
+ * {@link ContentHash}: the first one is minified and every caller waits on that same work. Once it
+ * completes, the next request for the code starts over (combine with a {@link MinificationCache}
+ * on the engines to remember results for longer). Each caller gets its own view of the shared
+ * work, so cancelling one caller's future doesn't cancel it for the others.
+ *
+ * At most maxPending distinct inputs are queued or running at a time; beyond that, requests wait
+ * for a slot or are rejected, so a flood of requests slows its callers down instead of filling the
+ * heap.
+ */
+public class AsyncMinifier implements Closeable
+{
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final int maxPending;
+    private final Semaphore pending;
+    private final ThreadLocalEngines engines = new ThreadLocalEngines(Charset.defaultCharset());
+    private final ConcurrentMap<HashCode, ListenableFuture<String>> inFlight = new ConcurrentHashMap<HashCode, ListenableFuture<String>>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile MinificationCache cache;
+
+    public AsyncMinifier(int threads, int maxPending)
+    {
+        this(Executors.newFixedThreadPool(threads), true, maxPending);
+    }
+
+    /**
+     * Runs work on an existing executor, which is not shut down by {@link #close()}; the caller must
+     * make sure no submitted work is still running when this is closed.
+     */
+    public AsyncMinifier(Executor executor, int maxPending)
+    {
+        this(executor, false, maxPending);
+    }
+
+    private AsyncMinifier(Executor executor, boolean ownsExecutor, int maxPending)
+    {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * Shares the cache between all worker engines.
+     */
+    public void setCache(MinificationCache cache)
+    {
+        this.cache = cache;
+    }
+
+    public ListenableFuture<String> minifyAsync(CharSequence javaCode)
+    {
+        return minifyAsync(javaCode, Collections.<MinifyOption>emptySet());
+    }
+
+    /**
+     * Blocks while maxPending distinct inputs are already in flight, until one of them completes.
+     * Don't call this from the executor's own threads: if they are all waiting here, nothing is left
+     * to complete the work they wait for. Use the variant with a timeout there instead.
+     *
+     * The code is copied before this returns, so the caller may reuse a mutable CharSequence.
+     *
+     * @throws RejectedExecutionException if the calling thread is interrupted while waiting, or the
+     *         executor rejects the work
+     */
+    public ListenableFuture<String> minifyAsync(CharSequence javaCode, Set<MinifyOption> options)
+    {
+        return minifyAsync(javaCode, options, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Like {@link #minifyAsync(CharSequence, Set)}, but waits at most the given time for a slot;
+     * a timeout of 0 fails fast. Requests that coalesce onto work already in flight never wait.
+     *
+     * @throws RejectedExecutionException if no slot became free in time, the calling thread is
+     *         interrupted while waiting, or the executor rejects the work
+     */
+    public ListenableFuture<String> minifyAsync(CharSequence javaCode, final Set<MinifyOption> options, long timeout, TimeUnit unit)
+    {
+        final String code = javaCode.toString();
+        final HashCode key = ContentHash.of(code, options);
+        final ListenableFutureTask<String> task = ListenableFutureTask.create(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                MinifierEngine engine = engines.get();
+                engine.setCache(cache);
+                return engine.minify(code, options);
+            }
+        });
+
+        ListenableFuture<String> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null)
+        {
+            coalesced.incrementAndGet();
+            return Futures.nonCancellationPropagating(existing);
+        }
+
+        if (!acquire(timeout, unit))
+        {
+            inFlight.remove(key, task);
+            // Fails every caller that coalesced onto the task in the meantime.
+            task.cancel(false);
+            throw new RejectedExecutionException("No slot free among " + maxPending + " pending inputs");
+        }
+        task.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                inFlight.remove(key, task);
+                pending.release();
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Fails every caller that coalesced onto the task, and releases the permit through the listener.
+            task.cancel(false);
+            throw e;
+        }
+        return Futures.nonCancellationPropagating(task);
+    }
+
+    private boolean acquire(long timeout, TimeUnit unit)
+    {
+        try
+        {
+            return pending.tryAcquire(timeout, unit);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * How many requests shared the result of an identical one that was already in flight.
+     */
+    public long coalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (ownsExecutor)
+        {
+            ExecutorService executorService = (ExecutorService) executor;
+            executorService.shutdown();
+            try
+            {
+                executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        engines.close();
+    }
+}
@@ -0,0 +1,388 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minifies many files in parallel. Each worker thread gets its own {@link MinifierEngine} (and so
+ * its own javac Context), and every file gets its own {@link ASTVisitor}, so nothing is shared
+ * between concurrent parses.
+ *
+ * Files are scheduled largest first: every submitted file joins a queue ordered by size, and each
+ * worker that comes free takes the largest file still waiting. A few huge files at the end of a
+ * sorted listing would otherwise start last and leave one core busy long after the rest are idle.
+ *
+ * By default work runs on a private {@link ForkJoinPool} sized to the number of cores. An existing
+ * executor can be passed in instead; in that case it is not shut down by {@link #close()}, and
+ * the caller must make sure no submitted work is still running when the batch is closed.
+ */
+public class BatchMinifier implements Closeable
+{
+    private interface Task<T>
+    {
+        T run(MinifierEngine engine, Path path, Set<MinifyOption> options) throws IOException;
+    }
+
+    private static final Task<String> MINIFY = new Task<String>()
+    {
+        @Override
+        public String run(MinifierEngine engine, Path path, Set<MinifyOption> options) throws IOException
+        {
+            return engine.minify(path, options);
+        }
+    };
+
+    private static final Task<HashCode> HASH = new Task<HashCode>()
+    {
+        @Override
+        public HashCode run(MinifierEngine engine, Path path, Set<MinifyOption> options) throws IOException
+        {
+            return engine.hash(path, options);
+        }
+    };
+
+    /**
+     * A file waiting for a worker. Ties go to the file submitted first.
+     */
+    private static class Scheduled implements Comparable<Scheduled>
+    {
+        final long size;
+        final long sequence;
+        final FutureTask<?> task;
+
+        Scheduled(long size, long sequence, FutureTask<?> task)
+        {
+            this.size = size;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Scheduled other)
+        {
+            if (size != other.size) return size > other.size ? -1 : 1;
+            return sequence < other.sequence ? -1 : sequence > other.sequence ? 1 : 0;
+        }
+    }
+
+    private final PriorityBlockingQueue<Scheduled> scheduled = new PriorityBlockingQueue<Scheduled>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Queued once per scheduled file, so every file gets run, but by whichever worker is free first.
+    private final Runnable runLargest = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Scheduled next = scheduled.poll();
+            if (next != null) next.task.run();
+        }
+    };
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Charset charset;
+    private final ThreadLocalEngines engines;
+    private volatile MinificationCache cache;
+    private volatile Set<MinifyOption> options = Collections.emptySet();
+
+    public BatchMinifier()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchMinifier(int parallelism)
+    {
+        this(parallelism, Charset.defaultCharset());
+    }
+
+    public BatchMinifier(int parallelism, Charset charset)
+    {
+        this(new ForkJoinPool(parallelism), true, charset);
+    }
+
+    public BatchMinifier(ExecutorService executor, Charset charset)
+    {
+        this(executor, false, charset);
+    }
+
+    private BatchMinifier(ExecutorService executor, boolean ownsExecutor, Charset charset)
+    {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.charset = charset;
+        this.engines = new ThreadLocalEngines(charset);
+    }
+
+    Charset charset()
+    {
+        return charset;
+    }
+
+    Set<MinifyOption> options()
+    {
+        return options;
+    }
+
+    /**
+     * Shares the cache between all worker engines. Results are looked up by content, so unchanged
+     * files are not parsed again.
+     */
+    public void setCache(MinificationCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Options for work submitted from now on; none by default.
+     */
+    public void setOptions(Set<MinifyOption> options)
+    {
+        this.options = options;
+    }
+
+    /**
+     * Queues a single file for minification on the worker pool.
+     *
+     * @throws RejectedExecutionException if the executor won't take the file, which is then not queued
+     */
+    public Future<String> submit(Path path)
+    {
+        return submit(path, MINIFY);
+    }
+
+    /**
+     * Queues source code that has already been read, such as an archive entry, decoding it with
+     * the batch's charset on the worker. Code runs in the order it was submitted rather than by
+     * size, so that a large request can't hold up small ones.
+     */
+    public Future<String> submit(byte[] javaCode)
+    {
+        return submit(javaCode, options);
+    }
+
+    public Future<String> submit(final byte[] javaCode, final Set<MinifyOption> options)
+    {
+        return executor.submit(new Callable<String>()
+        {
+            @Override
+            public String call()
+            {
+                MinifierEngine engine = engines.get();
+                engine.setCache(cache);
+                return engine.minify(charset.decode(ByteBuffer.wrap(javaCode)), options);
+            }
+        });
+    }
+
+    private <T> Future<T> submit(final Path path, final Task<T> task)
+    {
+        final Set<MinifyOption> options = this.options;
+        FutureTask<T> future = new FutureTask<T>(new Callable<T>()
+        {
+            @Override
+            public T call() throws IOException
+            {
+                MinifierEngine engine = engines.get();
+                engine.setCache(cache);
+                return task.run(engine, path, options);
+            }
+        });
+        Scheduled entry = new Scheduled(sizeOf(path), sequence.getAndIncrement(), future);
+        scheduled.add(entry);
+        try
+        {
+            executor.execute(runLargest);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Every entry needs a runLargest of its own. If an earlier one already took this file,
+            // another file is left over instead, and would otherwise wait forever.
+            if (!scheduled.remove(entry))
+            {
+                Scheduled leftOver = scheduled.poll();
+                if (leftOver != null) leftOver.task.cancel(false);
+            }
+            throw e;
+        }
+        return future;
+    }
+
+    private static long sizeOf(Path path)
+    {
+        try
+        {
+            return Files.size(path);
+        }
+        catch (IOException e)
+        {
+            // The worker will run into the same problem and report it.
+            return 0;
+        }
+    }
+
+    /**
+     * Minifies every file in parallel and returns the results in the same order as the input.
+     */
+    public List<String> minifyAll(Collection<Path> paths) throws IOException
+    {
+        List<Path> inputs = new ArrayList<Path>(paths);
+        List<Future<String>> futures = new ArrayList<Future<String>>(inputs.size());
+        for (Path path : inputs)
+        {
+            futures.add(submit(path));
+        }
+
+        List<String> results = new ArrayList<String>(inputs.size());
+        try
+        {
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                results.add(await(futures.get(i), inputs.get(i)));
+            }
+        }
+        finally
+        {
+            if (results.size() < futures.size())
+            {
+                for (Future<String> future : futures) future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Minifies every file the walker finds under root. Files are submitted as soon as they are
+     * found, so minification overlaps with the rest of the walk. Results are sorted by path.
+     */
+    public SortedMap<Path, String> minifyTree(SourceWalker walker, Path root) throws IOException
+    {
+        return runTree(walker, root, MINIFY);
+    }
+
+    /**
+     * Like {@link #minifyTree}, but keeps only a hash of each file's minified output, so a whole
+     * corpus can be verified or deduplicated without holding its output in memory.
+     */
+    public SortedMap<Path, HashCode> hashTree(SourceWalker walker, Path root) throws IOException
+    {
+        return runTree(walker, root, HASH);
+    }
+
+    /**
+     * Groups the paths whose hashes are equal, i.e. the files that minify to the same code. Only
+     * groups of two or more are returned, each in the iteration order of the given map.
+     */
+    public static List<List<Path>> duplicates(Map<Path, HashCode> hashes)
+    {
+        Map<HashCode, List<Path>> byHash = new LinkedHashMap<HashCode, List<Path>>();
+        for (Map.Entry<Path, HashCode> entry : hashes.entrySet())
+        {
+            List<Path> paths = byHash.get(entry.getValue());
+            if (paths == null)
+            {
+                paths = new ArrayList<Path>();
+                byHash.put(entry.getValue(), paths);
+            }
+            paths.add(entry.getKey());
+        }
+
+        List<List<Path>> duplicates = new ArrayList<List<Path>>();
+        for (List<Path> paths : byHash.values())
+        {
+            if (paths.size() > 1) duplicates.add(paths);
+        }
+        return duplicates;
+    }
+
+    private <T> SortedMap<Path, T> runTree(SourceWalker walker, Path root, final Task<T> task) throws IOException
+    {
+        final ConcurrentMap<Path, Future<T>> futures = new ConcurrentSkipListMap<Path, Future<T>>();
+        SortedMap<Path, T> results = new TreeMap<Path, T>();
+        try
+        {
+            walker.walk(root, new SourceWalker.Listener()
+            {
+                @Override
+                public void onFile(Path file)
+                {
+                    futures.put(file, submit(file, task));
+                }
+            });
+            for (Map.Entry<Path, Future<T>> entry : futures.entrySet())
+            {
+                results.put(entry.getKey(), await(entry.getValue(), entry.getKey()));
+            }
+        }
+        finally
+        {
+            if (results.size() < futures.size())
+            {
+                for (Future<T> future : futures.values()) future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    static <T> T await(Future<T> future, Path path) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while minifying " + path);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            // ForkJoinPool wraps checked exceptions thrown by a Callable in plain RuntimeExceptions.
+            while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null)
+            {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) throw new IOException("Could not minify " + path, cause);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException("Could not minify " + path, cause);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (ownsExecutor)
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        engines.close();
+    }
+}
@@ -0,0 +1,40 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.util.Set;
+
+/**
+ * Cache keys for minified output: a 128-bit Murmur3 hash of the source's characters, of the
+ * options it was minified with and of {@link #OUTPUT_VERSION}.
+ */
+public final class ContentHash
+{
+    /**
+     * Version of the minifier's output. Bump it whenever the same source and options minify to
+     * different code, so that caches outliving the JVM, such as {@link DiskMinificationCache}, stop
+     * serving output from older builds.
+     */
+    static final int OUTPUT_VERSION = 3;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private ContentHash() { }
+
+    public static HashCode of(CharSequence javaCode, Set<MinifyOption> options)
+    {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        int optionBits = 0;
+        for (MinifyOption option : options)
+        {
+            optionBits |= 1 << option.ordinal();
+        }
+        hasher.putInt(OUTPUT_VERSION);
+        hasher.putInt(optionBits);
+        hasher.putUnencodedChars(javaCode);
+        return hasher.hash();
+    }
+}
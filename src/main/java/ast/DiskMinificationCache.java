@@ -0,0 +1,414 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Minified output stored on disk, so that it survives the JVM and is shared by every build on the
+ * machine. Output is appended to a segment file, and a memory-mapped open-addressing table in a
+ * separate index file maps content hashes to segment offsets.
+ *
+ * Processes coordinate through a lock file: lookups take a shared lock and writes an exclusive one.
+ * When the index fills up, or the segment grows past the size cap, the writer rewrites both files
+ * (keeping the newest entries that fit in half the cap), renames them into place and marks the
+ * old index as stale, so other processes reopen the files on their next access.
+ *
+ * Keys include the minifier's output version (see {@link ContentHash#OUTPUT_VERSION}), so entries
+ * written by an older build are never hit and age out at the next rewrite.
+ *
+ * Use a single instance per directory in each JVM; file locks are held per JVM, not per object.
+ */
+public class DiskMinificationCache implements MinificationCache, Closeable
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x4D494E43; // "MINC"
+    private static final int VERSION = 1;
+    private static final long STALE = -1;
+
+    // Index header: magic, version, capacity, count, generation, committed segment length.
+    private static final int HEADER_BYTES = 32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int GENERATION_OFFSET = 16;
+    private static final int SEGMENT_LENGTH_OFFSET = 24;
+
+    // Index slot: key (two longs), segment offset + 1 (0 marks an empty slot), payload length.
+    private static final int SLOT_BYTES = 32;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Segment record: key (two longs), payload length, UTF-8 payload.
+    private static final int RECORD_HEADER_BYTES = 20;
+
+    private final Path directory;
+    private final Path indexPath;
+    private final Path segmentPath;
+    private final long maximumBytes;
+    private final FileChannel lockChannel;
+
+    private FileChannel indexChannel;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+
+    public DiskMinificationCache(Path directory, long maximumBytes) throws IOException
+    {
+        this.directory = directory;
+        this.indexPath = directory.resolve("index");
+        this.segmentPath = directory.resolve("segment");
+        this.maximumBytes = maximumBytes;
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("lock"), CREATE, READ, WRITE);
+        FileLock lock = lockChannel.lock();
+        try
+        {
+            if (!Files.exists(indexPath) || Files.size(indexPath) < HEADER_BYTES)
+            {
+                writeIndex(indexPath, INITIAL_CAPACITY, 0, Collections.<Entry>emptyList());
+                Files.deleteIfExists(segmentPath);
+            }
+            openFiles();
+            if (!isConsistent()) reset();
+        }
+        finally
+        {
+            lock.release();
+        }
+    }
+
+    @Override
+    public synchronized String getIfPresent(HashCode key)
+    {
+        ByteBuffer keyBytes = ByteBuffer.wrap(key.asBytes());
+        long high = keyBytes.getLong();
+        long low = keyBytes.getLong();
+
+        try
+        {
+            FileLock lock = lockChannel.lock(0, Long.MAX_VALUE, true);
+            try
+            {
+                refresh();
+                int slot = findSlot(high, low);
+                if (isEmpty(slot)) return null;
+                return readRecord(high, low, slotOffset(slot), index.getInt(slotPosition(slot) + 24));
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not read minification cache in " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void put(HashCode key, String minified)
+    {
+        ByteBuffer keyBytes = ByteBuffer.wrap(key.asBytes());
+        long high = keyBytes.getLong();
+        long low = keyBytes.getLong();
+        byte[] payload = minified.getBytes(UTF_8);
+
+        try
+        {
+            FileLock lock = lockChannel.lock();
+            try
+            {
+                refresh();
+                int slot = findSlot(high, low);
+                if (!isEmpty(slot)) return;
+
+                // Append past the committed length, so a record half-written by a crashed process is overwritten.
+                long offset = index.getLong(SEGMENT_LENGTH_OFFSET);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+                record.putLong(high).putLong(low).putInt(payload.length).put(payload);
+                record.flip();
+                while (record.hasRemaining())
+                {
+                    offset += segmentChannel.write(record, offset);
+                }
+
+                index.putLong(SEGMENT_LENGTH_OFFSET, offset);
+                writeSlot(index, slotPosition(slot), high, low, offset - record.capacity(), payload.length);
+                int count = index.getInt(COUNT_OFFSET) + 1;
+                index.putInt(COUNT_OFFSET, count);
+
+                if (count > capacity / 2 || offset > maximumBytes) rewrite();
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not write minification cache in " + directory, e);
+        }
+    }
+
+    public synchronized int size()
+    {
+        return index.getInt(COUNT_OFFSET);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        closeFiles();
+        lockChannel.close();
+    }
+
+    private void refresh() throws IOException
+    {
+        if (index.getLong(GENERATION_OFFSET) == STALE) openFiles();
+    }
+
+    private void openFiles() throws IOException
+    {
+        closeFiles();
+        indexChannel = FileChannel.open(indexPath, READ, WRITE);
+        segmentChannel = FileChannel.open(segmentPath, CREATE, READ, WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && indexChannel.read(header, header.position()) >= 0) { }
+        if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION)
+        {
+            throw new IOException("Not a minification cache index: " + indexPath);
+        }
+        capacity = header.getInt(CAPACITY_OFFSET);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * SLOT_BYTES);
+    }
+
+    /**
+     * Whether every entry in the index lies within the segment. A crash between renaming the
+     * rewritten segment and index into place leaves the old index over the new, shorter segment.
+     */
+    private boolean isConsistent() throws IOException
+    {
+        long segmentLength = segmentChannel.size();
+        if (index.getLong(SEGMENT_LENGTH_OFFSET) > segmentLength) return false;
+        for (int slot = 0; slot < capacity; ++slot)
+        {
+            if (isEmpty(slot)) continue;
+            int length = index.getInt(slotPosition(slot) + 24);
+            long offset = slotOffset(slot);
+            if (length < 0 || offset < 0 || offset + RECORD_HEADER_BYTES + length > segmentLength) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts over with empty files, replacing the index the same way as {@link #rewrite()} so that
+     * other processes notice. Called with the exclusive lock held.
+     */
+    private void reset() throws IOException
+    {
+        Path newIndexPath = directory.resolve("index.tmp");
+        writeIndex(newIndexPath, INITIAL_CAPACITY, index.getLong(GENERATION_OFFSET) + 1, Collections.<Entry>emptyList());
+        segmentChannel.truncate(0);
+        Files.move(newIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index.putLong(GENERATION_OFFSET, STALE);
+        openFiles();
+    }
+
+    private void closeFiles() throws IOException
+    {
+        if (indexChannel != null) indexChannel.close();
+        if (segmentChannel != null) segmentChannel.close();
+        index = null;
+    }
+
+    private static int slotPosition(int slot)
+    {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private boolean isEmpty(int slot)
+    {
+        return index.getLong(slotPosition(slot) + 16) == 0;
+    }
+
+    private long slotOffset(int slot)
+    {
+        return index.getLong(slotPosition(slot) + 16) - 1;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go
+     */
+    private int findSlot(long high, long low)
+    {
+        int mask = capacity - 1;
+        int slot = (int) low & mask;
+        while (true)
+        {
+            int position = slotPosition(slot);
+            if (index.getLong(position + 16) == 0) return slot;
+            if (index.getLong(position) == high && index.getLong(position + 8) == low) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static void writeSlot(ByteBuffer index, int position, long high, long low, long offset, int length)
+    {
+        index.putLong(position, high);
+        index.putLong(position + 8, low);
+        index.putLong(position + 16, offset + 1);
+        index.putInt(position + 24, length);
+    }
+
+    private String readRecord(long high, long low, long offset, int length) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        while (record.hasRemaining())
+        {
+            if (segmentChannel.read(record, offset + record.position()) < 0) return null;
+        }
+        // A mismatch means the files were changed underneath us (for example by a crash mid-rewrite): treat it as a miss.
+        if (record.getLong(0) != high || record.getLong(8) != low || record.getInt(16) != length) return null;
+        return new String(record.array(), RECORD_HEADER_BYTES, length, UTF_8);
+    }
+
+    private static class Entry
+    {
+        final long high;
+        final long low;
+        final long offset;
+        final int length;
+
+        Entry(long high, long low, long offset, int length)
+        {
+            this.high = high;
+            this.low = low;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        long recordBytes() { return RECORD_HEADER_BYTES + length; }
+    }
+
+    /**
+     * Rewrites the segment and a resized index, dropping the oldest entries if the segment is over
+     * the size cap. Called with the exclusive lock held.
+     */
+    private void rewrite() throws IOException
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int slot = 0; slot < capacity; ++slot)
+        {
+            if (isEmpty(slot)) continue;
+            int position = slotPosition(slot);
+            entries.add(new Entry(index.getLong(position), index.getLong(position + 8), slotOffset(slot), index.getInt(position + 24)));
+        }
+
+        // Newest first, so that the oldest entries are the ones that don't make the cut.
+        Collections.sort(entries, new Comparator<Entry>()
+        {
+            @Override
+            public int compare(Entry a, Entry b)
+            {
+                return a.offset < b.offset ? 1 : a.offset == b.offset ? 0 : -1;
+            }
+        });
+        long budget = index.getLong(SEGMENT_LENGTH_OFFSET) > maximumBytes ? maximumBytes / 2 : Long.MAX_VALUE;
+        List<Entry> kept = new ArrayList<Entry>();
+        long keptBytes = 0;
+        for (Entry entry : entries)
+        {
+            if (keptBytes + entry.recordBytes() > budget) break;
+            keptBytes += entry.recordBytes();
+            kept.add(entry);
+        }
+        Collections.reverse(kept);
+
+        Path newSegmentPath = directory.resolve("segment.tmp");
+        List<Entry> moved = new ArrayList<Entry>(kept.size());
+        FileChannel newSegment = FileChannel.open(newSegmentPath, CREATE, TRUNCATE_EXISTING, WRITE);
+        try
+        {
+            long position = 0;
+            for (Entry entry : kept)
+            {
+                long copied = 0;
+                while (copied < entry.recordBytes())
+                {
+                    long transferred = segmentChannel.transferTo(entry.offset + copied, entry.recordBytes() - copied, newSegment);
+                    // Only happens past the end of the segment, which isConsistent() rules out unless the files were corrupted since.
+                    if (transferred == 0) throw new IOException("Minification cache segment is shorter than its index: " + segmentPath);
+                    copied += transferred;
+                }
+                moved.add(new Entry(entry.high, entry.low, position, entry.length));
+                position += entry.recordBytes();
+            }
+            newSegment.force(true);
+        }
+        finally
+        {
+            newSegment.close();
+        }
+
+        int newCapacity = INITIAL_CAPACITY;
+        while (newCapacity < moved.size() * 4) newCapacity <<= 1;
+        Path newIndexPath = directory.resolve("index.tmp");
+        writeIndex(newIndexPath, newCapacity, index.getLong(GENERATION_OFFSET) + 1, moved);
+
+        Files.move(newSegmentPath, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(newIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index.putLong(GENERATION_OFFSET, STALE);
+        openFiles();
+    }
+
+    private static void writeIndex(Path path, int capacity, long generation, List<Entry> entries) throws IOException
+    {
+        ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + capacity * SLOT_BYTES);
+        table.putInt(MAGIC_OFFSET, MAGIC);
+        table.putInt(VERSION_OFFSET, VERSION);
+        table.putInt(CAPACITY_OFFSET, capacity);
+        table.putInt(COUNT_OFFSET, entries.size());
+        table.putLong(GENERATION_OFFSET, generation);
+
+        long segmentLength = 0;
+        int mask = capacity - 1;
+        for (Entry entry : entries)
+        {
+            int slot = (int) entry.low & mask;
+            while (table.getLong(slotPosition(slot) + 16) != 0) slot = (slot + 1) & mask;
+            writeSlot(table, slotPosition(slot), entry.high, entry.low, entry.offset, entry.length);
+            segmentLength = Math.max(segmentLength, entry.offset + entry.recordBytes());
+        }
+        table.putLong(SEGMENT_LENGTH_OFFSET, segmentLength);
+
+        FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE);
+        try
+        {
+            while (table.hasRemaining()) channel.write(table);
+            channel.force(true);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.sun.tools.javac.util.Name;
+
+/**
+ * Hashes the tokens {@link ASTVisitor} emits instead of printing them. The tokens follow from the
+ * tree alone (keywords and symbols from the node kinds, then names and literals), so the resulting
+ * fingerprint ignores whitespace, comments and other formatting, and no output is ever built.
+ * Each token is hashed with its type and length, so differently split token streams can't collide
+ * the way their concatenated text could.
+ */
+class FingerprintProcessor extends ASTVisitor.Processor
+{
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final byte KEYWORD = 1;
+    private static final byte LITERAL = 2;
+    private static final byte NAME = 3;
+    private static final byte SYMBOL = 4;
+
+    private final Hasher hasher = HASH_FUNCTION.newHasher();
+
+    FingerprintProcessor()
+    {
+        // Every method that would print is overridden, so there is no sink to print to.
+        super(null);
+    }
+
+    private void token(byte type, String text)
+    {
+        hasher.putByte(type).putInt(text.length()).putUnencodedChars(text);
+    }
+
+    @Override public void processCloseBlock() { token(SYMBOL, "}"); }
+    @Override public void processCloseParenthesis() { token(SYMBOL, ")"); }
+    @Override public void processKeyword(String keyword) { token(KEYWORD, keyword); }
+    @Override public void processLiteral(String literal) { token(LITERAL, literal); }
+    @Override public void processOpenBlock() { token(SYMBOL, "{"); }
+    @Override public void processOpenParenthesis() { token(SYMBOL, "("); }
+    @Override public void processSymbol(String symbol) { token(SYMBOL, symbol); }
+
+    // Hashes the name's bytes straight out of the name table.
+    @Override
+    public void processName(Name name)
+    {
+        hasher.putByte(NAME).putInt(name.getByteLength()).putBytes(name.getByteArray(), name.getByteOffset(), name.getByteLength());
+    }
+
+    public HashCode hash()
+    {
+        return hasher.hash();
+    }
+}
@@ -0,0 +1,54 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.ListBuffer;
+import com.sun.tools.javac.util.Name;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Drops single-type and single-static imports whose simple name is never used. Code can only
+ * refer to an imported name through an identifier (Map.Entry starts with the identifier Map, and a
+ * statically imported method is called through a bare one), so one scan collecting the identifiers
+ * outside the imports is enough; that covers uses in annotations, type arguments and casts too.
+ * Package annotations (in package-info.java) live outside the defs, so they are scanned separately.
+ * On-demand imports are always kept.
+ */
+class ImportPruner
+{
+    public void prune(JCTree.JCCompilationUnit compilationUnit)
+    {
+        IdentCollector used = new IdentCollector();
+        used.scan(compilationUnit.packageAnnotations);
+        for (JCTree def : compilationUnit.defs)
+        {
+            if (!(def instanceof JCTree.JCImport)) used.scan(def);
+        }
+
+        ListBuffer<JCTree> kept = new ListBuffer<JCTree>();
+        for (JCTree def : compilationUnit.defs)
+        {
+            if (!(def instanceof JCTree.JCImport) || isUsed((JCTree.JCImport) def, used.names)) kept.append(def);
+        }
+        compilationUnit.defs = kept.toList();
+    }
+
+    private static boolean isUsed(JCTree.JCImport jcImport, Set<Name> used)
+    {
+        Name name = ((JCTree.JCFieldAccess) jcImport.qualid).name;
+        return name.toString().equals("*") || used.contains(name);
+    }
+
+    private static class IdentCollector extends TreeScanner
+    {
+        final Set<Name> names = new HashSet<Name>();
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree)
+        {
+            names.add(tree.name);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Spells literals in their shortest form with exactly the same value and type:
+ *
+ * - integers in hexadecimal when that is shorter (0x80000000 rather than -2147483648), keeping the
+ *   L of longs;
+ * - floating point with the fewest digits that still round to the same float or double, with or
+ *   without an exponent (1e6, .5, 100F), keeping the F of floats and a '.' or exponent on doubles;
+ * - chars and strings with only the escapes they need: octal for other characters up to \377, and
+ *   no escaping of ' in strings or " in chars.
+ *
+ * Only ASCII is printed, so the output doesn't depend on the charset it is written in.
+ */
+final class LiteralCompactor
+{
+    private LiteralCompactor()
+    {
+    }
+
+    static String spell(JCTree.JCLiteral literal)
+    {
+        Object value = literal.getValue();
+        switch (literal.getKind())
+        {
+            case INT_LITERAL:
+                int intValue = ((Number) value).intValue();
+                return shorter(Integer.toString(intValue), "0x" + Integer.toHexString(intValue));
+            case LONG_LITERAL:
+                long longValue = ((Number) value).longValue();
+                return shorter(Long.toString(longValue), "0x" + Long.toHexString(longValue)) + "L";
+            case FLOAT_LITERAL:
+                float floatValue = ((Number) value).floatValue();
+                if (!isUnsignedFinite(floatValue)) return literal.toString();
+                return floating(new BigDecimal(Float.toString(floatValue)), floatValue, true);
+            case DOUBLE_LITERAL:
+                double doubleValue = ((Number) value).doubleValue();
+                if (!isUnsignedFinite(doubleValue)) return literal.toString();
+                return floating(new BigDecimal(Double.toString(doubleValue)), doubleValue, false);
+            case CHAR_LITERAL:
+                StringBuilder character = new StringBuilder("'");
+                escape((Character) value, (char) 0, '\'', character);
+                return character.append('\'').toString();
+            case STRING_LITERAL:
+                String string = (String) value;
+                StringBuilder quoted = new StringBuilder(string.length() + 2).append('"');
+                for (int i = 0; i < string.length(); ++i)
+                {
+                    escape(string.charAt(i), i + 1 < string.length() ? string.charAt(i + 1) : 0, '"', quoted);
+                }
+                return quoted.append('"').toString();
+            default:
+                return literal.toString();
+        }
+    }
+
+    private static String shorter(String first, String second)
+    {
+        return second.length() < first.length() ? second : first;
+    }
+
+    // Floating point literals can't be negative, infinite or NaN; those only come from a rewritten tree.
+    private static boolean isUnsignedFinite(double value)
+    {
+        return Math.copySign(1.0, value) > 0 && !Double.isInfinite(value) && !Double.isNaN(value);
+    }
+
+    private static String floating(BigDecimal exact, double value, boolean isFloat)
+    {
+        if (exact.signum() == 0) return isFloat ? "0F" : "0.";
+
+        // toString() round-trips, but doesn't always pick the fewest digits that do.
+        BigDecimal shortest = exact.stripTrailingZeros();
+        for (int precision = 1; precision < shortest.precision(); ++precision)
+        {
+            BigDecimal candidate = shortest.round(new MathContext(precision));
+            String text = candidate.toString();
+            if (isFloat ? Float.parseFloat(text) == (float) value : Double.parseDouble(text) == value)
+            {
+                shortest = candidate.stripTrailingZeros();
+                break;
+            }
+        }
+
+        String digits = shortest.unscaledValue().toString();
+        int exponent = -shortest.scale();
+        String suffix = isFloat ? "F" : "";
+
+        String positional;
+        if (exponent >= 0)
+        {
+            // Without a '.' or an exponent, a double would be an int.
+            positional = digits + zeros(exponent) + (isFloat ? "" : ".");
+        }
+        else
+        {
+            int point = digits.length() + exponent;
+            positional = point > 0 ? digits.substring(0, point) + "." + digits.substring(point) : "." + zeros(-point) + digits;
+        }
+        if (exponent == 0) return positional + suffix;
+        return shorter(positional, digits + "e" + exponent) + suffix;
+    }
+
+    private static String zeros(int count)
+    {
+        StringBuilder zeros = new StringBuilder(count);
+        for (int i = 0; i < count; ++i) zeros.append('0');
+        return zeros.toString();
+    }
+
+    private static void escape(char c, char next, char quote, StringBuilder out)
+    {
+        switch (c)
+        {
+            case '\b': out.append("\\b"); return;
+            case '\t': out.append("\\t"); return;
+            case '\n': out.append("\\n"); return;
+            case '\f': out.append("\\f"); return;
+            case '\r': out.append("\\r"); return;
+            case '\\': out.append("\\\\"); return;
+        }
+        if (c == quote)
+        {
+            out.append('\\').append(c);
+        }
+        else if (c >= ' ' && c <= '~')
+        {
+            out.append(c);
+        }
+        else if (c <= 0377)
+        {
+            // An octal escape takes up to three digits, so a short one can't be followed by an octal digit.
+            String octal = Integer.toOctalString(c);
+            out.append('\\');
+            if (next >= '0' && next <= '7') out.append(zeros(3 - octal.length()));
+            out.append(octal);
+        }
+        else
+        {
+            String hex = Integer.toHexString(c);
+            out.append("\\u").append(zeros(4 - hex.length())).append(hex);
+        }
+    }
+}
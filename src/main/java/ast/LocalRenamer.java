@@ -0,0 +1,314 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+
+import java.util.*;
+
+/**
+ * Renames method-local variables, parameters, catch parameters and foreach variables to the
+ * shortest identifiers available, giving the shortest names to the most used locals. The tree is
+ * changed in place, before it is printed.
+ *
+ * The pass has no symbol table, so it stays on the safe side:
+ *
+ * - new names are never any name that already appears in the compilation unit, so a renamed local
+ *   can't capture or hide a field, type, method or package it didn't hide before;
+ * - two locals only share a new name if their scopes don't overlap;
+ * - a local is left alone if its name is used inside a class body nested in its scope (where the
+ *   name may mean an inherited member instead) or as a case label.
+ */
+class LocalRenamer
+{
+    private static class Local
+    {
+        final JCTree.JCVariableDecl declaration;
+        final List<JCTree.JCIdent> references = new ArrayList<JCTree.JCIdent>();
+        final int start;
+        int end;
+        boolean pinned = false;
+
+        Local(JCTree.JCVariableDecl declaration, int start)
+        {
+            this.declaration = declaration;
+            this.start = start;
+        }
+
+        boolean overlaps(Local other)
+        {
+            return start <= other.end && other.start <= end;
+        }
+    }
+
+    private static class Scope
+    {
+        final boolean isClass;
+        final Map<Name, Local> locals = new HashMap<Name, Local>();
+
+        Scope(boolean isClass)
+        {
+            this.isClass = isClass;
+        }
+    }
+
+    private final Names names;
+
+    LocalRenamer(Names names)
+    {
+        this.names = names;
+    }
+
+    public void rename(JCTree.JCCompilationUnit compilationUnit)
+    {
+        NameCollector used = new NameCollector();
+        used.scan(compilationUnit);
+
+        Resolver resolver = new Resolver(used.caseLabels);
+        resolver.scan(compilationUnit);
+
+        List<Local> renamed = new ArrayList<Local>();
+        for (Local local : resolver.all)
+        {
+            if (!local.pinned) renamed.add(local);
+        }
+        // Most used first, so they get the shortest names; ties keep source order.
+        Collections.sort(renamed, new Comparator<Local>()
+        {
+            @Override
+            public int compare(Local a, Local b)
+            {
+                int byUses = b.references.size() - a.references.size();
+                return byUses != 0 ? byUses : a.start - b.start;
+            }
+        });
+
+        ShortNames shortNames = new ShortNames(used.names);
+        List<List<Local>> holders = new ArrayList<List<Local>>();
+        for (Local local : renamed)
+        {
+            int index = 0;
+            while (index < holders.size() && overlapsAny(local, holders.get(index))) ++index;
+            if (index == holders.size()) holders.add(new ArrayList<Local>());
+            holders.get(index).add(local);
+
+            Name name = names.fromString(shortNames.get(index));
+            local.declaration.name = name;
+            for (JCTree.JCIdent reference : local.references) reference.name = name;
+        }
+    }
+
+    private static boolean overlapsAny(Local local, List<Local> others)
+    {
+        for (Local other : others)
+        {
+            if (local.overlaps(other)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Every name spelled anywhere in the compilation unit, plus the names used as case labels.
+     */
+    static class NameCollector extends TreeScanner
+    {
+        final Set<String> names = new HashSet<String>();
+        final Set<Name> caseLabels = new HashSet<Name>();
+
+        @Override public void visitIdent(JCTree.JCIdent tree) { names.add(tree.name.toString()); }
+        @Override public void visitSelect(JCTree.JCFieldAccess tree) { names.add(tree.name.toString()); super.visitSelect(tree); }
+        @Override public void visitVarDef(JCTree.JCVariableDecl tree) { names.add(tree.name.toString()); super.visitVarDef(tree); }
+        @Override public void visitMethodDef(JCTree.JCMethodDecl tree) { names.add(tree.name.toString()); super.visitMethodDef(tree); }
+        @Override public void visitClassDef(JCTree.JCClassDecl tree) { names.add(tree.name.toString()); super.visitClassDef(tree); }
+        @Override public void visitTypeParameter(JCTree.JCTypeParameter tree) { names.add(tree.name.toString()); super.visitTypeParameter(tree); }
+        @Override public void visitLabelled(JCTree.JCLabeledStatement tree) { names.add(tree.label.toString()); super.visitLabelled(tree); }
+
+        @Override
+        public void visitCase(JCTree.JCCase tree)
+        {
+            if (tree.pat instanceof JCTree.JCIdent) caseLabels.add(((JCTree.JCIdent) tree.pat).name);
+            super.visitCase(tree);
+        }
+    }
+
+    /**
+     * Declares locals as their scopes open, links every identifier in an expression position to the
+     * innermost local of that name, and closes each local's interval when its scope ends. Type
+     * positions, method names and annotations are never visited.
+     */
+    private static class Resolver extends TreeScanner
+    {
+        final List<Local> all = new ArrayList<Local>();
+        private final Set<Name> caseLabels;
+        private final ArrayDeque<Scope> scopes = new ArrayDeque<Scope>();
+        private int position = 0;
+
+        Resolver(Set<Name> caseLabels)
+        {
+            this.caseLabels = caseLabels;
+        }
+
+        private void open(boolean isClass)
+        {
+            scopes.push(new Scope(isClass));
+        }
+
+        private void close()
+        {
+            ++position;
+            for (Local local : scopes.pop().locals.values()) local.end = position;
+        }
+
+        private void declare(JCTree.JCVariableDecl declaration)
+        {
+            Local local = new Local(declaration, ++position);
+            local.pinned = caseLabels.contains(declaration.name);
+            scopes.peek().locals.put(declaration.name, local);
+            all.add(local);
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree)
+        {
+            open(true);
+            for (JCTree member : tree.defs)
+            {
+                // Fields aren't locals, but their initializers can hold anonymous classes.
+                if (member instanceof JCTree.JCVariableDecl) scan(((JCTree.JCVariableDecl) member).init);
+                else scan(member);
+            }
+            close();
+        }
+
+        @Override
+        public void visitMethodDef(JCTree.JCMethodDecl tree)
+        {
+            if (tree.body == null) return;
+            open(false);
+            for (JCTree.JCVariableDecl parameter : tree.params) declare(parameter);
+            scan(tree.body);
+            close();
+        }
+
+        @Override
+        public void visitVarDef(JCTree.JCVariableDecl tree)
+        {
+            declare(tree);
+            scan(tree.init);
+        }
+
+        @Override
+        public void visitBlock(JCTree.JCBlock tree)
+        {
+            open(false);
+            scan(tree.stats);
+            close();
+        }
+
+        @Override
+        public void visitForLoop(JCTree.JCForLoop tree)
+        {
+            open(false);
+            super.visitForLoop(tree);
+            close();
+        }
+
+        @Override
+        public void visitForeachLoop(JCTree.JCEnhancedForLoop tree)
+        {
+            scan(tree.expr);
+            open(false);
+            declare(tree.var);
+            scan(tree.body);
+            close();
+        }
+
+        @Override
+        public void visitCatch(JCTree.JCCatch tree)
+        {
+            open(false);
+            declare(tree.param);
+            scan(tree.body);
+            close();
+        }
+
+        @Override
+        public void visitSwitch(JCTree.JCSwitch tree)
+        {
+            scan(tree.selector);
+            open(false);
+            for (JCTree.JCCase jcCase : tree.cases)
+            {
+                scan(jcCase.pat);
+                scan(jcCase.stats);
+            }
+            close();
+        }
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree)
+        {
+            boolean crossedClass = false;
+            for (Scope scope : scopes)
+            {
+                Local local = scope.locals.get(tree.name);
+                if (local != null)
+                {
+                    if (crossedClass) local.pinned = true;
+                    else local.references.add(tree);
+                    return;
+                }
+                crossedClass |= scope.isClass;
+            }
+        }
+
+        @Override
+        public void visitSelect(JCTree.JCFieldAccess tree)
+        {
+            // In Outer.this, Outer.super and Type.class the qualifier is a type.
+            String member = tree.name.toString();
+            if (member.equals("this") || member.equals("super") || member.equals("class")) return;
+            scan(tree.selected);
+        }
+
+        @Override
+        public void visitApply(JCTree.JCMethodInvocation tree)
+        {
+            if (tree.meth instanceof JCTree.JCFieldAccess) scan(tree.meth);
+            scan(tree.args);
+        }
+
+        @Override
+        public void visitNewClass(JCTree.JCNewClass tree)
+        {
+            scan(tree.encl);
+            scan(tree.args);
+            scan(tree.def);
+        }
+
+        @Override
+        public void visitNewArray(JCTree.JCNewArray tree)
+        {
+            scan(tree.dims);
+            scan(tree.elems);
+        }
+
+        @Override
+        public void visitTypeCast(JCTree.JCTypeCast tree)
+        {
+            scan(tree.expr);
+        }
+
+        @Override
+        public void visitTypeTest(JCTree.JCInstanceOf tree)
+        {
+            scan(tree.expr);
+        }
+
+        @Override
+        public void visitAnnotation(JCTree.JCAnnotation tree)
+        {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ast;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+
+/**
+ * In-memory LRU cache of minified output, bounded by the approximate number of bytes it holds.
+ */
+public class MemoryMinificationCache implements MinificationCache
+{
+    // Rough per-entry cost of the key, the String object and the cache's own bookkeeping.
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final Cache<HashCode, String> cache;
+
+    public MemoryMinificationCache(long maximumBytes)
+    {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(new Weigher<HashCode, String>()
+                {
+                    @Override
+                    public int weigh(HashCode key, String minified)
+                    {
+                        return ENTRY_OVERHEAD_BYTES + 2 * minified.length();
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getIfPresent(HashCode key)
+    {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(HashCode key, String minified)
+    {
+        cache.put(key, minified);
+    }
+
+    public long size() { return cache.size(); }
+
+    public CacheStats stats() { return cache.stats(); }
+    public long hitCount() { return cache.stats().hitCount(); }
+    public long missCount() { return cache.stats().missCount(); }
+    public long evictionCount() { return cache.stats().evictionCount(); }
+}
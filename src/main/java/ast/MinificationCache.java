@@ -0,0 +1,17 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Store of minified output keyed by {@link ContentHash}. Implementations must be thread-safe, since
+ * a single cache is shared by all the engines of a {@link BatchMinifier}.
+ */
+public interface MinificationCache
+{
+    /**
+     * @return the minified output stored under the key, or null if there is none
+     */
+    String getIfPresent(HashCode key);
+
+    void put(HashCode key, String minified);
+}
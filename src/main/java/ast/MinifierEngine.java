@@ -0,0 +1,302 @@
+package ast;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.parser.Parser;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Names;
+
+import javax.tools.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Long-lived minifier that sets up the javac Context, file manager and parser/scanner factories once
+ * and reuses them for every file. Setting these up costs more than parsing a typical source file, so
+ * callers that minify many files should keep one engine around instead of calling
+ * {@link ASTVisitor#minify(String)} in a loop.
+ *
+ * An engine is not thread-safe: use one engine per thread, and close it when done.
+ */
+public class MinifierEngine implements Closeable
+{
+    // Charsets in which every byte below 0x80 is the ASCII character with that value.
+    private static final Set<String> ASCII_COMPATIBLE = ImmutableSet.of("US-ASCII", "ISO-8859-1", "UTF-8");
+
+    private final Context context;
+    private final StandardJavaFileManager fileManager;
+    private final Parser.Factory parserFactory;
+    private final Scanner.Factory scannerFactory;
+    private final Names names;
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private CharBuffer source = CharBuffer.allocate(0);
+    private boolean closed = false;
+    private MinificationCache cache;
+
+    public MinifierEngine()
+    {
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     * @param charset encoding of the files passed to {@link #minify(Path)} and {@link #minify(FileChannel)}
+     */
+    public MinifierEngine(Charset charset)
+    {
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        asciiCompatible = ASCII_COMPATIBLE.contains(charset.name());
+
+        context = new Context();
+
+        // http://docs.oracle.com/javase/7/docs/api/javax/tools/StandardJavaFileManager.html
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        fileManager = ToolProvider.getSystemJavaCompiler().getStandardFileManager(diagnostics, null, null);
+        context.put(JavaFileManager.class, fileManager);
+
+        parserFactory = Parser.Factory.instance(context);
+        scannerFactory = Scanner.Factory.instance(context);
+        names = Names.instance(context);
+    }
+
+    /**
+     * Consults the cache before minifying and stores every result in it. Pass null to stop caching.
+     */
+    public void setCache(MinificationCache cache)
+    {
+        this.cache = cache;
+    }
+
+    public JCTree.JCCompilationUnit parse(CharSequence javaCode)
+    {
+        checkOpen();
+        Scanner scanner = scannerFactory.newScanner(javaCode);
+        Parser parser = parserFactory.newParser(scanner, true, true);
+        return parser.compilationUnit();
+    }
+
+    public String minify(CharSequence javaCode)
+    {
+        return minify(javaCode, Collections.<MinifyOption>emptySet());
+    }
+
+    public String minify(CharSequence javaCode, Set<MinifyOption> options)
+    {
+        HashCode key = null;
+        if (cache != null)
+        {
+            key = ContentHash.of(javaCode, options);
+            String cached = cache.getIfPresent(key);
+            if (cached != null) return cached;
+        }
+
+        Sink.StringSink sink = Sink.forString();
+        emit(javaCode, new ASTVisitor.Processor(sink), options);
+        String minified = sink.toString();
+
+        if (cache != null) cache.put(key, minified);
+        return minified;
+    }
+
+    public String minify(Path path) throws IOException
+    {
+        return minify(path, Collections.<MinifyOption>emptySet());
+    }
+
+    public String minify(Path path, Set<MinifyOption> options) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            return minify(channel, options);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    public String minify(FileChannel channel) throws IOException
+    {
+        return minify(channel, Collections.<MinifyOption>emptySet());
+    }
+
+    /**
+     * Minifies the whole file behind the channel without building a String of its contents: the
+     * file is memory-mapped and decoded into a buffer that the engine reuses for every file.
+     */
+    public String minify(FileChannel channel, Set<MinifyOption> options) throws IOException
+    {
+        return minify(decode(channel), options);
+    }
+
+    public void minify(CharSequence javaCode, Sink sink) throws IOException
+    {
+        minify(javaCode, sink, Collections.<MinifyOption>emptySet());
+    }
+
+    /**
+     * Streams the minified code to the sink as the tree is visited, then flushes the sink.
+     */
+    public void minify(CharSequence javaCode, Sink sink, Set<MinifyOption> options) throws IOException
+    {
+        try
+        {
+            // Cached output has to exist as a String anyway, so there is nothing to stream.
+            if (cache != null) sink.append(minify(javaCode, options));
+            else emit(javaCode, new ASTVisitor.Processor(sink), options);
+            sink.flush();
+        }
+        catch (Sink.WriteFailedException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    public HashCode hash(CharSequence javaCode)
+    {
+        return hash(javaCode, Collections.<MinifyOption>emptySet());
+    }
+
+    /**
+     * Hashes the minified code without building it: the result equals
+     * {@link Sink.HashingSink#hashOf(CharSequence)} of {@link #minify(CharSequence, Set)}.
+     */
+    public HashCode hash(CharSequence javaCode, Set<MinifyOption> options)
+    {
+        Sink.HashingSink sink = Sink.forHashing();
+        // Cached output already exists as a String, so hashing it is cheaper than minifying again.
+        if (cache != null) sink.append(minify(javaCode, options));
+        else emit(javaCode, new ASTVisitor.Processor(sink), options);
+        return sink.hash();
+    }
+
+    public HashCode hash(Path path, Set<MinifyOption> options) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try
+        {
+            return hash(decode(channel), options);
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Hashes the code's structure: the node kinds, names and literals that the minified output
+     * spells out, without producing that output. Reformatting the source or editing its comments
+     * leaves the fingerprint unchanged, so it can tell callers when there's nothing to redo.
+     */
+    public HashCode fingerprint(CharSequence javaCode)
+    {
+        FingerprintProcessor processor = new FingerprintProcessor();
+        new ASTVisitor(processor).visitTopLevel(parse(javaCode));
+        return processor.hash();
+    }
+
+    private void emit(CharSequence javaCode, ASTVisitor.Processor processor, Set<MinifyOption> options)
+    {
+        if (options.contains(MinifyOption.TOKENS_ONLY))
+        {
+            if (options.size() > 1) throw new IllegalArgumentException("TOKENS_ONLY can't be combined with " + options);
+            checkOpen();
+            new TokenMinifier(processor).minify(scannerFactory.newScanner(javaCode));
+        }
+        else
+        {
+            JCTree.JCCompilationUnit compilationUnit = parse(javaCode);
+            if (options.contains(MinifyOption.DROP_UNUSED_IMPORTS)) new ImportPruner().prune(compilationUnit);
+            if (options.contains(MinifyOption.DROP_PARENS)) new ParenRemover().remove(compilationUnit);
+            boolean impliedModifiers = options.contains(MinifyOption.DROP_IMPLIED_MODIFIERS);
+            boolean overrides = options.contains(MinifyOption.DROP_OVERRIDE);
+            if (impliedModifiers || overrides) new ModifierStripper(impliedModifiers, overrides).strip(compilationUnit);
+            // Mangling first: locals that share a name with a mangled member are renamed with it.
+            if (options.contains(MinifyOption.MANGLE_PRIVATES)) new PrivateMangler(names).mangle(compilationUnit);
+            if (options.contains(MinifyOption.RENAME_LOCALS)) new LocalRenamer(names).rename(compilationUnit);
+            new ASTVisitor(processor, options.contains(MinifyOption.COMPACT_LITERALS)).visitTopLevel(compilationUnit);
+        }
+    }
+
+    /**
+     * Decodes the channel's contents into the shared source buffer. Bytes are copied straight across
+     * while they are ASCII; the decoder only takes over from the first byte that isn't. The buffer
+     * keeps one spare char at the end, so the javac Scanner can use its array without copying it
+     * to make room for its end-of-input marker.
+     */
+    CharBuffer decode(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE - 1) throw new IOException("File too large to minify: " + size + " bytes");
+        ByteBuffer bytes = size == 0 ? ByteBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 1L, (long) Math.ceil(size * (double) decoder.maxCharsPerByte())) + 1;
+        if (source.capacity() < capacity) source = CharBuffer.allocate(capacity);
+        source.clear();
+
+        if (asciiCompatible)
+        {
+            char[] chars = source.array();
+            int length = (int) size;
+            int i = 0;
+            while (i < length)
+            {
+                byte b = bytes.get(i);
+                if (b < 0) break;
+                chars[i++] = (char) b;
+            }
+            bytes.position(i);
+            source.position(i);
+        }
+
+        if (bytes.hasRemaining())
+        {
+            decoder.reset();
+            CoderResult result = decoder.decode(bytes, source, true);
+            if (result.isUnderflow()) result = decoder.flush(source);
+            if (!result.isUnderflow()) result.throwException();
+        }
+        source.flip();
+        return source;
+    }
+
+    private void checkOpen()
+    {
+        if (closed) throw new IllegalStateException("MinifierEngine has been closed");
+    }
+
+    /**
+     * Doesn't throw IOException: the engine only reads through its file manager, so a failure to
+     * close it loses nothing.
+     */
+    @Override
+    public void close()
+    {
+        if (closed) return;
+        closed = true;
+        try
+        {
+            fileManager.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing was written through the file manager, so there is nothing to lose here.
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ast;
+
+/**
+ * Per-call switches for {@link MinifierEngine#minify(CharSequence, java.util.Set)}.
+ */
+public enum MinifyOption
+{
+    /**
+     * Minify straight from the javac Scanner's token stream without building a syntax tree. The
+     * output matches the tree-based minifier for everything it supports; see {@link TokenMinifier}.
+     */
+    TOKENS_ONLY,
+
+    /**
+     * Rename local variables and parameters to the shortest free identifiers; see {@link LocalRenamer}.
+     * Needs the syntax tree, so it can't be combined with {@link #TOKENS_ONLY}.
+     */
+    RENAME_LOCALS,
+
+    /**
+     * Rename private fields, methods and member classes to the shortest free identifiers, wherever
+     * that provably can't change what the code means; see {@link PrivateMangler}. Needs the syntax
+     * tree, so it can't be combined with {@link #TOKENS_ONLY}.
+     */
+    MANGLE_PRIVATES,
+
+    /**
+     * Leave out single-type and single-static imports that nothing in the file uses; see
+     * {@link ImportPruner}. Needs the syntax tree, so it can't be combined with {@link #TOKENS_ONLY}.
+     */
+    DROP_UNUSED_IMPORTS,
+
+    /**
+     * Leave out parentheses that operator precedence makes redundant; see {@link ParenRemover}.
+     * Needs the syntax tree, so it can't be combined with {@link #TOKENS_ONLY}.
+     */
+    DROP_PARENS,
+
+    /**
+     * Print numeric, char and string literals in their shortest spelling with the same value and
+     * type; see {@link LiteralCompactor}. Needs the syntax tree, so it can't be combined with
+     * {@link #TOKENS_ONLY}.
+     */
+    COMPACT_LITERALS,
+
+    /**
+     * Leave out modifiers the language implies, such as public abstract on interface methods and
+     * static on nested interfaces; see {@link ModifierStripper}. Needs the syntax tree, so it can't
+     * be combined with {@link #TOKENS_ONLY}.
+     */
+    DROP_IMPLIED_MODIFIERS,
+
+    /**
+     * Leave out @Override annotations. They only matter to the compiler's checks, not to the
+     * compiled code; see {@link ModifierStripper}. Needs the syntax tree, so it can't be combined
+     * with {@link #TOKENS_ONLY}.
+     */
+    DROP_OVERRIDE
+}
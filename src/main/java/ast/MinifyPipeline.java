@@ -0,0 +1,437 @@
+package ast;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Minifies directories, archives and single files through a pipeline of stages connected by
+ * bounded queues, so a slow stage holds back the ones before it instead of letting files pile up
+ * in memory:
+ *
+ * - one thread walks the inputs (and reads archive entries, which can only be read in order);
+ * - one thread reads files;
+ * - worker threads, each with its own {@link MinifierEngine}, decode, parse and emit;
+ * - one thread writes the output, mirroring each file's path relative to its input.
+ *
+ * Parsing and emitting share a stage because the tree belongs to the engine that parsed it. A file
+ * that can't be read, minified or written is reported in the {@link Stats} and the rest carry on.
+ *
+ * Files are minified in the order they are found. Unlike {@link BatchMinifier}, the pipeline
+ * doesn't schedule the largest first: its bounded queues only ever hold a few files to choose from.
+ */
+public class MinifyPipeline
+{
+    private interface Input
+    {
+        void enqueue(BlockingQueue<Job> queue) throws IOException, InterruptedException;
+    }
+
+    private static class Job
+    {
+        final String name;
+        final Path file;
+        byte[] bytes;
+        String minified;
+        Throwable failure;
+        long nanos;
+
+        Job(String name, Path file, byte[] bytes)
+        {
+            this.name = name;
+            this.file = file;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final Job END = new Job(null, null, null);
+
+    private final int threads;
+    private final Charset charset;
+    private final Set<MinifyOption> options;
+    private final List<Input> inputs = new ArrayList<Input>();
+    private volatile boolean aborted;
+
+    public MinifyPipeline(int threads, Charset charset, Set<MinifyOption> options)
+    {
+        this.threads = threads;
+        this.charset = charset;
+        this.options = options;
+    }
+
+    /**
+     * Adds the .java files under the directory, written relative to it.
+     */
+    public MinifyPipeline addDirectory(final Path directory)
+    {
+        inputs.add(new Input()
+        {
+            @Override
+            public void enqueue(final BlockingQueue<Job> queue) throws IOException
+            {
+                new SourceWalker().include("*.java").walk(directory, new SourceWalker.Listener()
+                {
+                    @Override
+                    public void onFile(Path file)
+                    {
+                        put(queue, new Job(directory.relativize(file).toString(), file, null));
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds the .java entries of a zip or jar archive, written under their entry names.
+     */
+    public MinifyPipeline addArchive(final Path archive)
+    {
+        inputs.add(new Input()
+        {
+            @Override
+            public void enqueue(BlockingQueue<Job> queue) throws IOException, InterruptedException
+            {
+                ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive)));
+                try
+                {
+                    ZipEntry entry;
+                    while ((entry = zip.getNextEntry()) != null)
+                    {
+                        if (entry.isDirectory() || !entry.getName().endsWith(".java")) continue;
+                        queue.put(new Job(entry.getName(), null, ByteStreams.toByteArray(zip)));
+                    }
+                }
+                finally
+                {
+                    zip.close();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Adds a single file, written under the given name.
+     */
+    public MinifyPipeline addFile(final Path file, final String name)
+    {
+        inputs.add(new Input()
+        {
+            @Override
+            public void enqueue(BlockingQueue<Job> queue) throws InterruptedException
+            {
+                queue.put(new Job(name, file, null));
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues a file found by a {@link SourceWalker}, whose fork/join threads aren't interrupted when
+     * the pipeline is aborted, so they check for that themselves instead of waiting forever.
+     */
+    private void put(BlockingQueue<Job> queue, Job job)
+    {
+        try
+        {
+            while (!queue.offer(job, 100, TimeUnit.MILLISECONDS))
+            {
+                if (aborted) throw new CancellationException("Pipeline aborted");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while walking");
+        }
+    }
+
+    /**
+     * Runs every input through the pipeline and returns once all output is written. If a stage
+     * fails outright, as opposed to a single file, the other stages are interrupted and the
+     * failure is rethrown.
+     *
+     * @param outputDirectory where to write the minified files, or null to only measure
+     */
+    public Stats run(Path outputDirectory) throws IOException
+    {
+        int capacity = 4 * threads;
+        BlockingQueue<Job> toRead = new ArrayBlockingQueue<Job>(capacity);
+        BlockingQueue<Job> toMinify = new ArrayBlockingQueue<Job>(capacity);
+        BlockingQueue<Job> toWrite = new ArrayBlockingQueue<Job>(capacity);
+        Stats stats = new Stats();
+        aborted = false;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 3);
+        CompletionService<Void> stages = new ExecutorCompletionService<Void>(executor);
+        long start = System.nanoTime();
+        try
+        {
+            stages.submit(new WalkStage(toRead));
+            stages.submit(new ReadStage(toRead, toMinify));
+            AtomicInteger running = new AtomicInteger(threads);
+            for (int i = 0; i < threads; ++i)
+            {
+                stages.submit(new MinifyStage(toMinify, toWrite, running));
+            }
+            stages.submit(new WriteStage(toWrite, outputDirectory, stats));
+
+            for (int i = 0; i < threads + 3; ++i) stages.take().get();
+        }
+        catch (InterruptedException e)
+        {
+            aborted = true;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while minifying");
+        }
+        catch (ExecutionException e)
+        {
+            aborted = true;
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            // Stages catch everything a single file can throw, so this is a bug rather than bad input.
+            throw new IllegalStateException("Pipeline stage failed", e.getCause());
+        }
+        finally
+        {
+            // Interrupts whatever is still waiting on a queue once a stage has failed.
+            executor.shutdownNow();
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private class WalkStage implements Callable<Void>
+    {
+        private final BlockingQueue<Job> out;
+
+        WalkStage(BlockingQueue<Job> out)
+        {
+            this.out = out;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException
+        {
+            try
+            {
+                for (Input input : inputs) input.enqueue(out);
+            }
+            finally
+            {
+                out.put(END);
+            }
+            return null;
+        }
+    }
+
+    private static class ReadStage implements Callable<Void>
+    {
+        private final BlockingQueue<Job> in;
+        private final BlockingQueue<Job> out;
+
+        ReadStage(BlockingQueue<Job> in, BlockingQueue<Job> out)
+        {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public Void call() throws InterruptedException
+        {
+            try
+            {
+                Job job;
+                while ((job = in.take()) != END)
+                {
+                    if (job.bytes == null)
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            job.bytes = Files.readAllBytes(job.file);
+                        }
+                        catch (Throwable e)
+                        {
+                            job.failure = e;
+                        }
+                        job.nanos += System.nanoTime() - start;
+                    }
+                    out.put(job);
+                }
+            }
+            finally
+            {
+                out.put(END);
+            }
+            return null;
+        }
+    }
+
+    private class MinifyStage implements Callable<Void>
+    {
+        private final BlockingQueue<Job> in;
+        private final BlockingQueue<Job> out;
+        private final AtomicInteger running;
+
+        MinifyStage(BlockingQueue<Job> in, BlockingQueue<Job> out, AtomicInteger running)
+        {
+            this.in = in;
+            this.out = out;
+            this.running = running;
+        }
+
+        @Override
+        public Void call() throws InterruptedException
+        {
+            MinifierEngine engine = new MinifierEngine(charset);
+            try
+            {
+                Job job;
+                while ((job = in.take()) != END)
+                {
+                    if (job.failure == null)
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            job.minified = engine.minify(charset.decode(ByteBuffer.wrap(job.bytes)), options);
+                        }
+                        catch (Throwable e)
+                        {
+                            // Includes StackOverflowError from deeply nested code, which only dooms this file.
+                            job.failure = e;
+                        }
+                        job.nanos += System.nanoTime() - start;
+                    }
+                    out.put(job);
+                }
+            }
+            finally
+            {
+                engine.close();
+                // Pass the end on to the next worker; the last one to finish passes it downstream.
+                (running.decrementAndGet() == 0 ? out : in).put(END);
+            }
+            return null;
+        }
+    }
+
+    private class WriteStage implements Callable<Void>
+    {
+        private final BlockingQueue<Job> in;
+        private final Path outputDirectory;
+        private final Stats stats;
+
+        WriteStage(BlockingQueue<Job> in, Path outputDirectory, Stats stats)
+        {
+            this.in = in;
+            this.outputDirectory = outputDirectory == null ? null : outputDirectory.toAbsolutePath().normalize();
+            this.stats = stats;
+        }
+
+        @Override
+        public Void call() throws InterruptedException
+        {
+            Job job;
+            while ((job = in.take()) != END)
+            {
+                if (job.failure == null)
+                {
+                    long start = System.nanoTime();
+                    try
+                    {
+                        byte[] bytes = job.minified.getBytes(charset);
+                        if (outputDirectory != null) write(job.name, bytes);
+                        stats.bytesWritten += bytes.length;
+                    }
+                    catch (Throwable e)
+                    {
+                        job.failure = e;
+                    }
+                    job.nanos += System.nanoTime() - start;
+                }
+                stats.add(job);
+            }
+            return null;
+        }
+
+        private void write(String name, byte[] bytes) throws IOException
+        {
+            Path target = outputDirectory.resolve(name).normalize();
+            // Archive entry names are untrusted, and must not climb out of the output directory.
+            if (!target.startsWith(outputDirectory) || target.equals(outputDirectory))
+            {
+                throw new IOException("Refusing to write outside the output directory");
+            }
+            Files.createDirectories(target.getParent());
+            Files.write(target, bytes);
+        }
+    }
+
+    /**
+     * Totals for a run. Latency is the time spent reading, minifying and writing a file, without
+     * the time it waited in queues.
+     */
+    public static class Stats
+    {
+        private final List<String> failures = new ArrayList<String>();
+        private long[] latencies = new long[64];
+        private int files;
+        private long bytesRead;
+        private long bytesWritten;
+        private long elapsedNanos;
+        private boolean sorted;
+
+        void add(Job job)
+        {
+            if (job.failure != null)
+            {
+                failures.add(job.name + ": " + job.failure);
+                return;
+            }
+            if (files == latencies.length) latencies = Arrays.copyOf(latencies, 2 * files);
+            latencies[files++] = job.nanos;
+            bytesRead += job.bytes.length;
+        }
+
+        public int files() { return files; }
+        public List<String> failures() { return Collections.unmodifiableList(failures); }
+        public long bytesRead() { return bytesRead; }
+        public long bytesWritten() { return bytesWritten; }
+        public long elapsedNanos() { return elapsedNanos; }
+
+        public double filesPerSecond() { return files * 1e9 / Math.max(elapsedNanos, 1); }
+        public double megabytesPerSecond() { return bytesRead * 1e9 / (1 << 20) / Math.max(elapsedNanos, 1); }
+
+        /**
+         * Nearest-rank percentile of the per-file latencies, in nanoseconds, or 0 without files.
+         */
+        public long latencyPercentile(double percentile)
+        {
+            if (files == 0) return 0;
+            if (!sorted)
+            {
+                Arrays.sort(latencies, 0, files);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * files);
+            return latencies[Math.min(Math.max(rank, 1), files) - 1];
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package ast;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minification daemon, so that build steps can share one warm JVM instead of paying for class
+ * loading, javac setup and JIT warm-up on every run. Endpoints:
+ *
+ * - POST /minify takes a source file as the body and returns the minified code;
+ * - POST /minify/batch takes a zip or jar and returns it with its .java entries minified, as
+ *   {@link ArchiveMinifier} does, with an X-Unminified header for each entry it couldn't minify,
+ *   giving its name and the reason.
+ *
+ * Both take ?options=NAME,... (see {@link MinifyOption}) and report where the time went in a
+ * Server-Timing header. Bodies are in the server's charset, and are buffered in memory, so bodies
+ * larger than the server's limit are refused with 413. Requests are handled on a fixed pool
+ * of threads and minified on a {@link BatchMinifier}, whose engines stay warm between requests.
+ */
+public class MinifyServer implements Closeable
+{
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final BatchMinifier batchMinifier;
+    private final ArchiveMinifier archiveMinifier;
+    private final Charset charset;
+    private final int maxBodyBytes;
+
+    public MinifyServer(InetSocketAddress address, int threads, Charset charset) throws IOException
+    {
+        this(address, threads, charset, 64 << 20);
+    }
+
+    /**
+     * @param maxBodyBytes the largest request body accepted, since each one is held in memory
+     */
+    public MinifyServer(InetSocketAddress address, int threads, final Charset charset, int maxBodyBytes) throws IOException
+    {
+        this.charset = charset;
+        this.maxBodyBytes = maxBodyBytes;
+        batchMinifier = new BatchMinifier(threads, charset);
+        archiveMinifier = new ArchiveMinifier(batchMinifier);
+        handlers = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(address, 0);
+        server.setExecutor(handlers);
+        server.createContext("/minify", new Handler("/minify", "text/plain; charset=" + charset.name())
+        {
+            @Override
+            byte[] handle(byte[] body, Set<MinifyOption> options, HttpExchange exchange) throws Exception
+            {
+                return batchMinifier.submit(body, options).get().getBytes(charset);
+            }
+        });
+        server.createContext("/minify/batch", new Handler("/minify/batch", "application/zip")
+        {
+            @Override
+            byte[] handle(byte[] body, Set<MinifyOption> options, HttpExchange exchange) throws IOException
+            {
+                // Buffered rather than streamed, so the headers can still report failures and timing.
+                ByteArrayOutputStream archive = new ByteArrayOutputStream(body.length);
+                List<String> unminified = archiveMinifier.minify(new ByteArrayInputStream(body), archive, options);
+                // One header per entry, since the reasons may contain commas; they mustn't break lines though.
+                for (String entry : unminified)
+                {
+                    exchange.getResponseHeaders().add("X-Unminified", entry.replaceAll("[\\r\\n]+", " "));
+                }
+                return archive.toByteArray();
+            }
+        });
+    }
+
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * The address the server listens on, with the actual port if it was started on port 0.
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests, waits for the ones in progress and closes the engines.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        server.stop(0);
+        handlers.shutdown();
+        try
+        {
+            handlers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        batchMinifier.close();
+    }
+
+    static Set<MinifyOption> parseOptions(URI uri)
+    {
+        Set<MinifyOption> options = EnumSet.noneOf(MinifyOption.class);
+        String query = uri.getQuery();
+        if (query == null) return options;
+        for (String parameter : query.split("&"))
+        {
+            if (!parameter.startsWith("options=")) throw new IllegalArgumentException("Unknown parameter " + parameter);
+            for (String option : parameter.substring("options=".length()).split(","))
+            {
+                if (!option.isEmpty()) options.add(MinifyOption.valueOf(option.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return options;
+    }
+
+    private abstract class Handler implements HttpHandler
+    {
+        private final String path;
+        private final String contentType;
+
+        Handler(String path, String contentType)
+        {
+            this.path = path;
+            this.contentType = contentType;
+        }
+
+        abstract byte[] handle(byte[] body, Set<MinifyOption> options, HttpExchange exchange) throws Exception;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            try
+            {
+                long start = System.nanoTime();
+                // Contexts match by prefix, so /minifyfoo would end up here too.
+                if (!exchange.getRequestURI().getPath().equals(path))
+                {
+                    respond(exchange, 404, "No such endpoint");
+                    return;
+                }
+                if (!exchange.getRequestMethod().equals("POST"))
+                {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    respond(exchange, 405, "Use POST");
+                    return;
+                }
+                Set<MinifyOption> options;
+                try
+                {
+                    options = parseOptions(exchange.getRequestURI());
+                }
+                catch (IllegalArgumentException e)
+                {
+                    respond(exchange, 400, e.getMessage());
+                    return;
+                }
+
+                byte[] body = readBody(exchange);
+                if (body == null)
+                {
+                    respond(exchange, 413, "Request body is larger than " + maxBodyBytes + " bytes");
+                    return;
+                }
+                long read = System.nanoTime();
+                byte[] response;
+                try
+                {
+                    response = handle(body, options, exchange);
+                }
+                catch (ExecutionException e)
+                {
+                    respond(exchange, 422, "Could not minify: " + e.getCause());
+                    return;
+                }
+                catch (IOException e)
+                {
+                    respond(exchange, 400, "Could not read the archive: " + e);
+                    return;
+                }
+                long minified = System.nanoTime();
+                exchange.getResponseHeaders().set("Server-Timing", String.format(Locale.ROOT,
+                        "read;dur=%.3f, minify;dur=%.3f", (read - start) / 1e6, (minified - read) / 1e6));
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                if (exchange.getResponseCode() == -1) respond(exchange, 503, "Shutting down");
+            }
+            catch (Exception e)
+            {
+                // Once the headers are out, as when the client goes away mid-response, all that's left is to close.
+                if (exchange.getResponseCode() == -1) respond(exchange, 500, e.toString());
+            }
+            finally
+            {
+                exchange.close();
+            }
+        }
+
+        /**
+         * @return the body, or null if it is larger than maxBodyBytes
+         */
+        private byte[] readBody(HttpExchange exchange) throws IOException
+        {
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            try
+            {
+                if (contentLength != null && Long.parseLong(contentLength.trim()) > maxBodyBytes) return null;
+            }
+            catch (NumberFormatException e)
+            {
+                // The limited read below still applies.
+            }
+            // Chunked bodies don't declare a length, so read one byte past the limit to spot those.
+            byte[] body = ByteStreams.toByteArray(ByteStreams.limit(exchange.getRequestBody(), maxBodyBytes + 1L));
+            return body.length > maxBodyBytes ? null : body;
+        }
+
+        private void respond(HttpExchange exchange, int status, String message) throws IOException
+        {
+            byte[] bytes = message.getBytes(charset);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + charset.name());
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ast;
+
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.ListBuffer;
+
+/**
+ * Drops modifiers the language implies anyway, and optionally @Override annotations:
+ *
+ * - public and abstract on interface methods;
+ * - public, static and final on interface fields;
+ * - public and static on types declared in interfaces;
+ * - static on nested interfaces and enums, and abstract on interfaces.
+ *
+ * The parser only records the modifiers that were written, so clearing their flags is all it takes.
+ * @Override is only recognized as Override or java.lang.Override, and is left alone if the
+ * compilation unit imports or declares another type of that name.
+ */
+class ModifierStripper
+{
+    private static final long INTERFACE_METHOD = Flags.PUBLIC | Flags.ABSTRACT;
+    private static final long INTERFACE_FIELD = Flags.PUBLIC | Flags.STATIC | Flags.FINAL;
+    private static final long INTERFACE_TYPE = Flags.PUBLIC | Flags.STATIC;
+
+    private final boolean impliedModifiers;
+    private final boolean overrides;
+
+    ModifierStripper(boolean impliedModifiers, boolean overrides)
+    {
+        this.impliedModifiers = impliedModifiers;
+        this.overrides = overrides;
+    }
+
+    public void strip(JCTree.JCCompilationUnit compilationUnit)
+    {
+        new Stripper(overrides && !redefinesOverride(compilationUnit)).scan(compilationUnit);
+    }
+
+    private static boolean redefinesOverride(JCTree.JCCompilationUnit compilationUnit)
+    {
+        final boolean[] found = new boolean[1];
+        new TreeScanner()
+        {
+            @Override
+            public void visitImport(JCTree.JCImport tree)
+            {
+                found[0] |= ((JCTree.JCFieldAccess) tree.qualid).name.toString().equals("Override");
+            }
+
+            @Override
+            public void visitClassDef(JCTree.JCClassDecl tree)
+            {
+                found[0] |= tree.name.toString().equals("Override");
+                super.visitClassDef(tree);
+            }
+        }.scan(compilationUnit);
+        return found[0];
+    }
+
+    private static boolean isOverride(JCTree.JCAnnotation annotation)
+    {
+        JCTree type = annotation.annotationType;
+        if (type instanceof JCTree.JCIdent) return ((JCTree.JCIdent) type).name.toString().equals("Override");
+        return type.toString().equals("java.lang.Override");
+    }
+
+    private class Stripper extends TreeScanner
+    {
+        private final boolean dropOverrides;
+
+        Stripper(boolean dropOverrides)
+        {
+            this.dropOverrides = dropOverrides;
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree)
+        {
+            if (impliedModifiers)
+            {
+                boolean isInterface = (tree.mods.flags & Flags.INTERFACE) != 0;
+                if (isInterface) tree.mods.flags &= ~Flags.ABSTRACT;
+                if (isInterface || (tree.mods.flags & Flags.ENUM) != 0) tree.mods.flags &= ~Flags.STATIC;
+                if (isInterface)
+                {
+                    for (JCTree member : tree.defs)
+                    {
+                        if (member instanceof JCTree.JCMethodDecl) ((JCTree.JCMethodDecl) member).mods.flags &= ~INTERFACE_METHOD;
+                        else if (member instanceof JCTree.JCVariableDecl) ((JCTree.JCVariableDecl) member).mods.flags &= ~INTERFACE_FIELD;
+                        else if (member instanceof JCTree.JCClassDecl) ((JCTree.JCClassDecl) member).mods.flags &= ~INTERFACE_TYPE;
+                    }
+                }
+            }
+            super.visitClassDef(tree);
+        }
+
+        @Override
+        public void visitModifiers(JCTree.JCModifiers tree)
+        {
+            if (dropOverrides && !tree.annotations.isEmpty())
+            {
+                ListBuffer<JCTree.JCAnnotation> kept = new ListBuffer<JCTree.JCAnnotation>();
+                for (JCTree.JCAnnotation annotation : tree.annotations)
+                {
+                    if (!isOverride(annotation)) kept.append(annotation);
+                }
+                tree.annotations = kept.toList();
+            }
+            super.visitModifiers(tree);
+        }
+    }
+}
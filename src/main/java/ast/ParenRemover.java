@@ -0,0 +1,171 @@
+package ast;
+
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+
+/**
+ * Removes parentheses that operator precedence and associativity make redundant, around the
+ * operands of binary, unary, conditional, cast and instanceof expressions. The printed result
+ * parses back to the same tree, without those JCParens nodes. Parentheses required by the grammar
+ * (if, while, switch and the like) are never touched, and neither are parentheses around an equal
+ * precedence right operand: a + (b + c) must stay as it is for strings and floating point.
+ */
+class ParenRemover
+{
+    private static final int ASSIGNMENT = 2;
+    private static final int CONDITIONAL = 3;
+    private static final int CONDITIONAL_OR = 4;
+    private static final int RELATIONAL = 10;
+    private static final int PREFIX = 14;
+    private static final int POSTFIX = 15;
+    private static final int PRIMARY = 16;
+
+    // How tightly each kind of expression binds, indexed by Tree.Kind ordinal; 0 for kinds that are never unwrapped.
+    private static final int[] PRECEDENCE = new int[Tree.Kind.values().length];
+    static
+    {
+        for (Tree.Kind kind : new Tree.Kind[] {
+                Tree.Kind.IDENTIFIER, Tree.Kind.MEMBER_SELECT, Tree.Kind.METHOD_INVOCATION, Tree.Kind.ARRAY_ACCESS,
+                Tree.Kind.NEW_CLASS, Tree.Kind.NEW_ARRAY, Tree.Kind.PARENTHESIZED,
+                Tree.Kind.INT_LITERAL, Tree.Kind.LONG_LITERAL, Tree.Kind.FLOAT_LITERAL, Tree.Kind.DOUBLE_LITERAL,
+                Tree.Kind.BOOLEAN_LITERAL, Tree.Kind.CHAR_LITERAL, Tree.Kind.STRING_LITERAL, Tree.Kind.NULL_LITERAL })
+        {
+            PRECEDENCE[kind.ordinal()] = PRIMARY;
+        }
+        PRECEDENCE[Tree.Kind.POSTFIX_INCREMENT.ordinal()] = POSTFIX;
+        PRECEDENCE[Tree.Kind.POSTFIX_DECREMENT.ordinal()] = POSTFIX;
+        for (Tree.Kind kind : new Tree.Kind[] {
+                Tree.Kind.PREFIX_INCREMENT, Tree.Kind.PREFIX_DECREMENT, Tree.Kind.UNARY_PLUS, Tree.Kind.UNARY_MINUS,
+                Tree.Kind.BITWISE_COMPLEMENT, Tree.Kind.LOGICAL_COMPLEMENT, Tree.Kind.TYPE_CAST })
+        {
+            PRECEDENCE[kind.ordinal()] = PREFIX;
+        }
+        PRECEDENCE[Tree.Kind.MULTIPLY.ordinal()] = 13;
+        PRECEDENCE[Tree.Kind.DIVIDE.ordinal()] = 13;
+        PRECEDENCE[Tree.Kind.REMAINDER.ordinal()] = 13;
+        PRECEDENCE[Tree.Kind.PLUS.ordinal()] = 12;
+        PRECEDENCE[Tree.Kind.MINUS.ordinal()] = 12;
+        PRECEDENCE[Tree.Kind.LEFT_SHIFT.ordinal()] = 11;
+        PRECEDENCE[Tree.Kind.RIGHT_SHIFT.ordinal()] = 11;
+        PRECEDENCE[Tree.Kind.UNSIGNED_RIGHT_SHIFT.ordinal()] = 11;
+        PRECEDENCE[Tree.Kind.LESS_THAN.ordinal()] = RELATIONAL;
+        PRECEDENCE[Tree.Kind.GREATER_THAN.ordinal()] = RELATIONAL;
+        PRECEDENCE[Tree.Kind.LESS_THAN_EQUAL.ordinal()] = RELATIONAL;
+        PRECEDENCE[Tree.Kind.GREATER_THAN_EQUAL.ordinal()] = RELATIONAL;
+        PRECEDENCE[Tree.Kind.INSTANCE_OF.ordinal()] = RELATIONAL;
+        PRECEDENCE[Tree.Kind.EQUAL_TO.ordinal()] = 9;
+        PRECEDENCE[Tree.Kind.NOT_EQUAL_TO.ordinal()] = 9;
+        PRECEDENCE[Tree.Kind.AND.ordinal()] = 8;
+        PRECEDENCE[Tree.Kind.XOR.ordinal()] = 7;
+        PRECEDENCE[Tree.Kind.OR.ordinal()] = 6;
+        PRECEDENCE[Tree.Kind.CONDITIONAL_AND.ordinal()] = 5;
+        PRECEDENCE[Tree.Kind.CONDITIONAL_OR.ordinal()] = CONDITIONAL_OR;
+        PRECEDENCE[Tree.Kind.CONDITIONAL_EXPRESSION.ordinal()] = CONDITIONAL;
+        for (Tree.Kind kind : new Tree.Kind[] {
+                Tree.Kind.ASSIGNMENT, Tree.Kind.MULTIPLY_ASSIGNMENT, Tree.Kind.DIVIDE_ASSIGNMENT,
+                Tree.Kind.REMAINDER_ASSIGNMENT, Tree.Kind.PLUS_ASSIGNMENT, Tree.Kind.MINUS_ASSIGNMENT,
+                Tree.Kind.LEFT_SHIFT_ASSIGNMENT, Tree.Kind.RIGHT_SHIFT_ASSIGNMENT, Tree.Kind.UNSIGNED_RIGHT_SHIFT_ASSIGNMENT,
+                Tree.Kind.AND_ASSIGNMENT, Tree.Kind.XOR_ASSIGNMENT, Tree.Kind.OR_ASSIGNMENT })
+        {
+            PRECEDENCE[kind.ordinal()] = ASSIGNMENT;
+        }
+    }
+
+    public void remove(JCTree.JCCompilationUnit compilationUnit)
+    {
+        new Remover().scan(compilationUnit);
+    }
+
+    private static int precedence(JCTree.JCExpression expression)
+    {
+        // The parser folds a minus into a decimal literal, which then binds like the unary minus it was.
+        if (expression instanceof JCTree.JCLiteral && startsWithSign(expression)) return PREFIX;
+        return PRECEDENCE[expression.getKind().ordinal()];
+    }
+
+    private static boolean startsWithSign(JCTree.JCExpression expression)
+    {
+        switch (expression.getKind())
+        {
+            case UNARY_PLUS:
+            case UNARY_MINUS:
+            case PREFIX_INCREMENT:
+            case PREFIX_DECREMENT:
+                return true;
+            case INT_LITERAL:
+            case LONG_LITERAL:
+                return expression.toString().charAt(0) == '-';
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the operand without the parentheses around it that an operand of at least the given
+     * precedence doesn't need
+     */
+    private static JCTree.JCExpression unwrap(JCTree.JCExpression operand, int minimumPrecedence)
+    {
+        while (operand instanceof JCTree.JCParens && precedence(((JCTree.JCParens) operand).expr) >= minimumPrecedence)
+        {
+            operand = ((JCTree.JCParens) operand).expr;
+        }
+        return operand;
+    }
+
+    private static class Remover extends TreeScanner
+    {
+        @Override
+        public void visitBinary(JCTree.JCBinary tree)
+        {
+            int precedence = PRECEDENCE[tree.getKind().ordinal()];
+            tree.lhs = unwrap(tree.lhs, precedence);
+            tree.rhs = unwrap(tree.rhs, precedence + 1);
+            super.visitBinary(tree);
+        }
+
+        @Override
+        public void visitUnary(JCTree.JCUnary tree)
+        {
+            tree.arg = unwrap(tree.arg, PRECEDENCE[tree.getKind().ordinal()]);
+            super.visitUnary(tree);
+        }
+
+        @Override
+        public void visitConditional(JCTree.JCConditional tree)
+        {
+            tree.cond = unwrap(tree.cond, CONDITIONAL_OR);
+            tree.truepart = unwrap(tree.truepart, ASSIGNMENT);
+            tree.falsepart = unwrap(tree.falsepart, CONDITIONAL);
+            super.visitConditional(tree);
+        }
+
+        @Override
+        public void visitTypeCast(JCTree.JCTypeCast tree)
+        {
+            if (tree.clazz instanceof JCTree.JCPrimitiveTypeTree)
+            {
+                tree.expr = unwrap(tree.expr, PREFIX);
+            }
+            else
+            {
+                // (Integer) -a would parse as a subtraction, so a reference cast keeps parentheses around a sign.
+                while (tree.expr instanceof JCTree.JCParens)
+                {
+                    JCTree.JCExpression inner = ((JCTree.JCParens) tree.expr).expr;
+                    if (precedence(inner) < PREFIX || startsWithSign(inner)) break;
+                    tree.expr = inner;
+                }
+            }
+            super.visitTypeCast(tree);
+        }
+
+        @Override
+        public void visitTypeTest(JCTree.JCInstanceOf tree)
+        {
+            tree.expr = unwrap(tree.expr, RELATIONAL);
+            super.visitTypeTest(tree);
+        }
+    }
+}
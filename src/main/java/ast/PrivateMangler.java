@@ -0,0 +1,553 @@
+package ast;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Name;
+import com.sun.tools.javac.util.Names;
+
+import java.util.*;
+
+/**
+ * Renames private fields, private methods and private member classes to the shortest free
+ * identifiers, giving the shortest names to the most used. Every occurrence of a name is renamed
+ * the same way, so a name is only mangled when every place it is spelled in the compilation unit
+ * can be shown to mean one of those private members, or a local variable (which then simply gets
+ * the new name as well).
+ *
+ * Without a symbol table that proof is done lexically, and a name is left alone if:
+ *
+ * - anything other than a private member or a local is declared with it (a non-private member, a
+ *   type parameter, a local class, a label), or it is imported or part of the package name;
+ * - a declaration with it is annotated or native, or it is an instance field that serialization
+ *   could see, or a name that serialization or Object give a meaning;
+ * - an unqualified use could be inherited from a supertype before reaching the private member,
+ *   or could pick an inherited overload of a private method;
+ * - a qualified use isn't qualified by this, Outer.this or the name of the declaring class;
+ * - it is used inside an annotation or as a bare case label.
+ */
+class PrivateMangler
+{
+    private static final Set<String> RESERVED = ImmutableSet.of(
+            "serialVersionUID", "serialPersistentFields", "readObject", "writeObject", "readObjectNoData",
+            "readResolve", "writeReplace", "equals", "hashCode", "toString", "getClass", "clone", "finalize",
+            "notify", "notifyAll", "wait", "main");
+
+    private enum Usage { VALUE, CALL, TYPE }
+
+    private static class ClassInfo
+    {
+        final boolean hasSupertypes;
+        final Set<Name> fields = new HashSet<Name>();
+        final Set<Name> methods = new HashSet<Name>();
+        final Set<Name> classes = new HashSet<Name>();
+
+        ClassInfo(boolean hasSupertypes)
+        {
+            this.hasSupertypes = hasSupertypes;
+        }
+
+        boolean declares(Name name, Usage usage)
+        {
+            switch (usage)
+            {
+                case VALUE: return fields.contains(name) || classes.contains(name);
+                case CALL: return methods.contains(name);
+                default: return classes.contains(name);
+            }
+        }
+
+        /**
+         * A call binds to a private method here only if no overload can be inherited alongside it.
+         */
+        boolean binds(Name name, Usage usage)
+        {
+            return declares(name, usage) && (usage != Usage.CALL || !hasSupertypes);
+        }
+    }
+
+    /**
+     * A class body (info is set) or a block scope holding local variables.
+     */
+    private static class Frame
+    {
+        final ClassInfo info;
+        final Set<Name> locals = new HashSet<Name>();
+
+        Frame(ClassInfo info)
+        {
+            this.info = info;
+        }
+    }
+
+    private final Names names;
+
+    PrivateMangler(Names names)
+    {
+        this.names = names;
+    }
+
+    public void mangle(JCTree.JCCompilationUnit compilationUnit)
+    {
+        Collector collector = new Collector();
+        collector.scan(compilationUnit);
+
+        Set<Name> candidates = new HashSet<Name>(collector.privateNames);
+        candidates.removeAll(collector.disqualified);
+        for (Iterator<Name> it = candidates.iterator(); it.hasNext(); )
+        {
+            if (RESERVED.contains(it.next().toString())) it.remove();
+        }
+        if (candidates.isEmpty()) return;
+
+        Resolver resolver = new Resolver(collector, candidates);
+        resolver.scan(compilationUnit);
+        candidates.removeAll(resolver.disqualified);
+
+        final Map<Name, List<JCTree>> occurrences = resolver.occurrences;
+        List<Name> mangled = new ArrayList<Name>(candidates);
+        // Most used first, so they get the shortest names; ties are broken by name to keep the output stable.
+        Collections.sort(mangled, new Comparator<Name>()
+        {
+            @Override
+            public int compare(Name a, Name b)
+            {
+                int byUses = occurrences.get(b).size() - occurrences.get(a).size();
+                return byUses != 0 ? byUses : a.toString().compareTo(b.toString());
+            }
+        });
+
+        LocalRenamer.NameCollector used = new LocalRenamer.NameCollector();
+        used.scan(compilationUnit);
+        ShortNames shortNames = new ShortNames(used.names);
+        for (int i = 0; i < mangled.size(); ++i)
+        {
+            Name name = names.fromString(shortNames.get(i));
+            for (JCTree tree : occurrences.get(mangled.get(i)))
+            {
+                if (tree instanceof JCTree.JCIdent) ((JCTree.JCIdent) tree).name = name;
+                else if (tree instanceof JCTree.JCFieldAccess) ((JCTree.JCFieldAccess) tree).name = name;
+                else if (tree instanceof JCTree.JCVariableDecl) ((JCTree.JCVariableDecl) tree).name = name;
+                else if (tree instanceof JCTree.JCMethodDecl) ((JCTree.JCMethodDecl) tree).name = name;
+                else ((JCTree.JCClassDecl) tree).name = name;
+            }
+        }
+    }
+
+    /**
+     * Finds the private members of every class, and the names that can't be mangled whatever their uses.
+     */
+    private static class Collector extends TreeScanner
+    {
+        final Map<JCTree.JCClassDecl, ClassInfo> classes = new IdentityHashMap<JCTree.JCClassDecl, ClassInfo>();
+        final Map<Name, ClassInfo> classesByName = new HashMap<Name, ClassInfo>();
+        final Set<Name> ambiguousClassNames = new HashSet<Name>();
+        final Set<Name> privateNames = new HashSet<Name>();
+        final Set<Name> disqualified = new HashSet<Name>();
+        private final Set<JCTree> memberClasses = Collections.newSetFromMap(new IdentityHashMap<JCTree, Boolean>());
+
+        @Override
+        public void visitTopLevel(JCTree.JCCompilationUnit tree)
+        {
+            disqualifyQualifiedName(tree.pid);
+            for (JCTree def : tree.defs)
+            {
+                if (def instanceof JCTree.JCClassDecl)
+                {
+                    memberClasses.add(def);
+                    disqualified.add(((JCTree.JCClassDecl) def).name);
+                }
+            }
+            super.visitTopLevel(tree);
+        }
+
+        @Override
+        public void visitImport(JCTree.JCImport tree)
+        {
+            disqualifyQualifiedName(tree.qualid);
+        }
+
+        private void disqualifyQualifiedName(JCTree part)
+        {
+            for (; part instanceof JCTree.JCFieldAccess; part = ((JCTree.JCFieldAccess) part).selected)
+            {
+                disqualified.add(((JCTree.JCFieldAccess) part).name);
+            }
+            if (part instanceof JCTree.JCIdent) disqualified.add(((JCTree.JCIdent) part).name);
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree)
+        {
+            boolean isAnonymous = tree.name.isEmpty();
+            if (!isAnonymous && !memberClasses.contains(tree)) disqualified.add(tree.name);
+
+            ClassInfo info = new ClassInfo(isAnonymous || tree.extending != null || !tree.implementing.isEmpty());
+            classes.put(tree, info);
+            if (!isAnonymous)
+            {
+                if (classesByName.containsKey(tree.name)) ambiguousClassNames.add(tree.name);
+                classesByName.put(tree.name, info);
+            }
+
+            for (JCTree member : tree.defs)
+            {
+                if (member instanceof JCTree.JCVariableDecl)
+                {
+                    JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) member;
+                    // Serialization sees the instance fields of any class that might be Serializable.
+                    boolean serialized = info.hasSupertypes && (field.mods.flags & (Flags.STATIC | Flags.TRANSIENT)) == 0;
+                    if (declarePrivate(field.name, field.mods, serialized)) info.fields.add(field.name);
+                }
+                else if (member instanceof JCTree.JCMethodDecl)
+                {
+                    JCTree.JCMethodDecl method = (JCTree.JCMethodDecl) member;
+                    if (method.name.toString().equals("<init>")) continue;
+                    if (declarePrivate(method.name, method.mods, (method.mods.flags & Flags.NATIVE) != 0)) info.methods.add(method.name);
+                }
+                else if (member instanceof JCTree.JCClassDecl)
+                {
+                    JCTree.JCClassDecl memberClass = (JCTree.JCClassDecl) member;
+                    memberClasses.add(memberClass);
+                    if (declarePrivate(memberClass.name, memberClass.mods, false)) info.classes.add(memberClass.name);
+                }
+            }
+            super.visitClassDef(tree);
+        }
+
+        /**
+         * @return whether the member is private, and so might be mangled
+         */
+        private boolean declarePrivate(Name name, JCTree.JCModifiers mods, boolean excluded)
+        {
+            boolean isPrivate = (mods.flags & Flags.PRIVATE) != 0;
+            if (!isPrivate || excluded || !mods.annotations.isEmpty()) disqualified.add(name);
+            if (isPrivate) privateNames.add(name);
+            return isPrivate;
+        }
+
+        @Override
+        public void visitTypeParameter(JCTree.JCTypeParameter tree)
+        {
+            disqualified.add(tree.name);
+            super.visitTypeParameter(tree);
+        }
+
+        @Override
+        public void visitLabelled(JCTree.JCLabeledStatement tree)
+        {
+            disqualified.add(tree.label);
+            super.visitLabelled(tree);
+        }
+    }
+
+    /**
+     * Resolves every use of a candidate name lexically, disqualifying the name as soon as one use
+     * might mean something other than a private member or a local, and collects the trees to rename.
+     */
+    private static class Resolver extends TreeScanner
+    {
+        final Set<Name> disqualified = new HashSet<Name>();
+        final Map<Name, List<JCTree>> occurrences = new HashMap<Name, List<JCTree>>();
+
+        private final Collector collector;
+        private final Set<Name> candidates;
+        private final ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+        private boolean inType = false;
+
+        Resolver(Collector collector, Set<Name> candidates)
+        {
+            this.collector = collector;
+            this.candidates = candidates;
+            for (Name name : candidates) occurrences.put(name, new ArrayList<JCTree>());
+        }
+
+        private void record(Name name, JCTree tree)
+        {
+            if (candidates.contains(name)) occurrences.get(name).add(tree);
+        }
+
+        private void use(Name name, Usage usage, JCTree tree)
+        {
+            if (!candidates.contains(name)) return;
+            if (!resolvesToPrivateOrLocal(name, usage)) disqualified.add(name);
+            record(name, tree);
+        }
+
+        private boolean resolvesToPrivateOrLocal(Name name, Usage usage)
+        {
+            for (Frame frame : frames)
+            {
+                if (frame.info == null)
+                {
+                    if (usage == Usage.VALUE && frame.locals.contains(name)) return true;
+                }
+                else
+                {
+                    if (frame.info.declares(name, usage)) return frame.info.binds(name, usage);
+                    if (frame.info.hasSupertypes) return false;
+                }
+            }
+            return false;
+        }
+
+        private void useQualified(Name name, Usage usage, JCTree.JCExpression qualifier, JCTree tree)
+        {
+            if (!candidates.contains(name)) return;
+            ClassInfo target = classOf(qualifier);
+            if (target == null || !target.binds(name, usage)) disqualified.add(name);
+            record(name, tree);
+        }
+
+        /**
+         * @return the class named by this, Outer.this or a class name, or null for anything else
+         */
+        private ClassInfo classOf(JCTree.JCExpression qualifier)
+        {
+            Name name;
+            if (qualifier instanceof JCTree.JCIdent)
+            {
+                name = ((JCTree.JCIdent) qualifier).name;
+                if (name.toString().equals("this"))
+                {
+                    for (Frame frame : frames)
+                    {
+                        if (frame.info != null) return frame.info;
+                    }
+                    return null;
+                }
+            }
+            else if (qualifier instanceof JCTree.JCFieldAccess)
+            {
+                JCTree.JCFieldAccess select = (JCTree.JCFieldAccess) qualifier;
+                name = select.name;
+                if (name.toString().equals("this"))
+                {
+                    if (!(select.selected instanceof JCTree.JCIdent)) return null;
+                    name = ((JCTree.JCIdent) select.selected).name;
+                }
+            }
+            else return null;
+
+            if (collector.ambiguousClassNames.contains(name)) return null;
+            return collector.classesByName.get(name);
+        }
+
+        private void scanType(JCTree tree)
+        {
+            boolean saved = inType;
+            inType = true;
+            scan(tree);
+            inType = saved;
+        }
+
+        private void scanType(com.sun.tools.javac.util.List<? extends JCTree> trees)
+        {
+            for (JCTree tree : trees) scanType(tree);
+        }
+
+        private void declareLocal(JCTree.JCVariableDecl tree)
+        {
+            frames.peek().locals.add(tree.name);
+            record(tree.name, tree);
+        }
+
+        @Override
+        public void visitTopLevel(JCTree.JCCompilationUnit tree)
+        {
+            for (JCTree def : tree.defs)
+            {
+                if (!(def instanceof JCTree.JCImport)) scan(def);
+            }
+        }
+
+        @Override
+        public void visitClassDef(JCTree.JCClassDecl tree)
+        {
+            record(tree.name, tree);
+            scan(tree.mods);
+            scanType(tree.typarams);
+            scanType(tree.extending);
+            scanType(tree.implementing);
+
+            frames.push(new Frame(collector.classes.get(tree)));
+            for (JCTree member : tree.defs)
+            {
+                if (member instanceof JCTree.JCVariableDecl)
+                {
+                    JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) member;
+                    record(field.name, field);
+                    scan(field.mods);
+                    scanType(field.vartype);
+                    scan(field.init);
+                }
+                else scan(member);
+            }
+            frames.pop();
+        }
+
+        @Override
+        public void visitMethodDef(JCTree.JCMethodDecl tree)
+        {
+            record(tree.name, tree);
+            scan(tree.mods);
+            scanType(tree.typarams);
+            scanType(tree.restype);
+            scanType(tree.thrown);
+
+            frames.push(new Frame(null));
+            for (JCTree.JCVariableDecl parameter : tree.params)
+            {
+                scan(parameter.mods);
+                scanType(parameter.vartype);
+                declareLocal(parameter);
+            }
+            scan(tree.body);
+            frames.pop();
+            // An annotation element's default, which is resolved in the annotation type's scope.
+            scan(tree.defaultValue);
+        }
+
+        @Override
+        public void visitVarDef(JCTree.JCVariableDecl tree)
+        {
+            scan(tree.mods);
+            scanType(tree.vartype);
+            declareLocal(tree);
+            scan(tree.init);
+        }
+
+        @Override
+        public void visitBlock(JCTree.JCBlock tree)
+        {
+            frames.push(new Frame(null));
+            scan(tree.stats);
+            frames.pop();
+        }
+
+        @Override
+        public void visitForLoop(JCTree.JCForLoop tree)
+        {
+            frames.push(new Frame(null));
+            super.visitForLoop(tree);
+            frames.pop();
+        }
+
+        @Override
+        public void visitForeachLoop(JCTree.JCEnhancedForLoop tree)
+        {
+            scan(tree.expr);
+            frames.push(new Frame(null));
+            scan(tree.var);
+            scan(tree.body);
+            frames.pop();
+        }
+
+        @Override
+        public void visitCatch(JCTree.JCCatch tree)
+        {
+            frames.push(new Frame(null));
+            scan(tree.param);
+            scan(tree.body);
+            frames.pop();
+        }
+
+        @Override
+        public void visitSwitch(JCTree.JCSwitch tree)
+        {
+            scan(tree.selector);
+            frames.push(new Frame(null));
+            for (JCTree.JCCase jcCase : tree.cases)
+            {
+                // A bare label may be a constant of an enum declared elsewhere.
+                if (jcCase.pat instanceof JCTree.JCIdent) disqualified.add(((JCTree.JCIdent) jcCase.pat).name);
+                else scan(jcCase.pat);
+                scan(jcCase.stats);
+            }
+            frames.pop();
+        }
+
+        @Override
+        public void visitIdent(JCTree.JCIdent tree)
+        {
+            use(tree.name, inType ? Usage.TYPE : Usage.VALUE, tree);
+        }
+
+        @Override
+        public void visitSelect(JCTree.JCFieldAccess tree)
+        {
+            // In Outer.this, Outer.super and Type.class the qualifier is a type.
+            String member = tree.name.toString();
+            if (member.equals("this") || member.equals("super") || member.equals("class"))
+            {
+                scanType(tree.selected);
+                return;
+            }
+            useQualified(tree.name, inType ? Usage.TYPE : Usage.VALUE, tree.selected, tree);
+            scan(tree.selected);
+        }
+
+        @Override
+        public void visitApply(JCTree.JCMethodInvocation tree)
+        {
+            scanType(tree.typeargs);
+            if (tree.meth instanceof JCTree.JCFieldAccess)
+            {
+                JCTree.JCFieldAccess select = (JCTree.JCFieldAccess) tree.meth;
+                useQualified(select.name, Usage.CALL, select.selected, select);
+                scan(select.selected);
+            }
+            else if (tree.meth instanceof JCTree.JCIdent)
+            {
+                use(((JCTree.JCIdent) tree.meth).name, Usage.CALL, tree.meth);
+            }
+            scan(tree.args);
+        }
+
+        @Override
+        public void visitNewClass(JCTree.JCNewClass tree)
+        {
+            scan(tree.encl);
+            scanType(tree.typeargs);
+            // outer.new Inner() looks Inner up in the class of outer, which we can't know.
+            if (tree.encl != null && tree.clazz instanceof JCTree.JCIdent) disqualified.add(((JCTree.JCIdent) tree.clazz).name);
+            scanType(tree.clazz);
+            scan(tree.args);
+            scan(tree.def);
+        }
+
+        @Override
+        public void visitNewArray(JCTree.JCNewArray tree)
+        {
+            scanType(tree.elemtype);
+            scan(tree.dims);
+            scan(tree.elems);
+        }
+
+        @Override
+        public void visitTypeCast(JCTree.JCTypeCast tree)
+        {
+            scanType(tree.clazz);
+            scan(tree.expr);
+        }
+
+        @Override
+        public void visitTypeTest(JCTree.JCInstanceOf tree)
+        {
+            scan(tree.expr);
+            scanType(tree.clazz);
+        }
+
+        @Override
+        public void visitAnnotation(JCTree.JCAnnotation tree)
+        {
+            LocalRenamer.NameCollector spelled = new LocalRenamer.NameCollector();
+            spelled.scan(tree);
+            for (Name name : candidates)
+            {
+                if (spelled.names.contains(name.toString())) disqualified.add(name);
+            }
+        }
+    }
+}
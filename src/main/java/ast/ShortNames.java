@@ -0,0 +1,70 @@
+package ast;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The shortest legal Java identifiers, in order: a-z, A-Z, then two characters (a letter followed
+ * by a letter or digit), and so on. Keywords, literals and any names passed in as reserved are
+ * skipped, so the nth short name never collides with anything the compilation unit already uses.
+ */
+final class ShortNames
+{
+    private static final String FIRST = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String REST = FIRST + "0123456789";
+
+    private static final Set<String> KEYWORDS = ImmutableSet.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while",
+            "true", "false", "null");
+
+    private final Set<String> reserved;
+    private final List<String> names = new ArrayList<String>();
+    private int candidate = 0;
+
+    ShortNames(Set<String> reserved)
+    {
+        this.reserved = reserved;
+    }
+
+    /**
+     * @return the index-th shortest identifier that is neither a keyword nor reserved
+     */
+    String get(int index)
+    {
+        while (names.size() <= index)
+        {
+            String name = spell(candidate++);
+            if (!KEYWORDS.contains(name) && !reserved.contains(name)) names.add(name);
+        }
+        return names.get(index);
+    }
+
+    private static String spell(int n)
+    {
+        StringBuilder name = new StringBuilder();
+        name.append(FIRST.charAt(n % FIRST.length()));
+        n /= FIRST.length();
+        int length = 1;
+        int block = 1;
+        // Names of each length form a block of FIRST * REST^(length - 1); n counts within the current block.
+        while (n >= block)
+        {
+            n -= block;
+            block *= REST.length();
+            ++length;
+        }
+        for (int i = 1; i < length; ++i)
+        {
+            name.append(REST.charAt(n % REST.length()));
+            n /= REST.length();
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,316 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Destination for the characters an {@link ASTVisitor.Processor} emits. Sinks let the visitor stream
+ * minified output straight to a writer, channel or buffer instead of collecting it in memory.
+ *
+ * Sinks report I/O failures as {@link WriteFailedException}, since the visitor callbacks cannot
+ * throw checked exceptions; {@link MinifierEngine#minify(CharSequence, Sink)} turns them back into
+ * the original IOException.
+ */
+public abstract class Sink
+{
+    public abstract void append(char c);
+    public abstract void append(CharSequence text);
+
+    public void append(char[] chars, int offset, int length)
+    {
+        append(CharBuffer.wrap(chars, offset, length));
+    }
+
+    public void flush() { }
+
+    public static StringSink forString() { return new StringSink(); }
+    public static Sink forAppendable(Appendable appendable) { return new AppendableSink(appendable); }
+    public static Sink forWriter(Writer writer) { return new WriterSink(writer); }
+    public static HashingSink forHashing() { return new HashingSink(); }
+
+    /**
+     * Encodes output as UTF-8 into a buffer of the given size and writes it to the channel whenever
+     * the buffer fills up, and on {@link #flush()}.
+     *
+     * @param bufferSize at least 4 bytes, the longest UTF-8 encoding of a character
+     */
+    public static Sink forChannel(WritableByteChannel channel, int bufferSize)
+    {
+        if (bufferSize < 4) throw new IllegalArgumentException("Buffer must hold at least 4 bytes, not " + bufferSize);
+        return new ChannelSink(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    /**
+     * Encodes output as UTF-8 directly into the given buffer, throwing {@link BufferOverflowException}
+     * if it does not fit.
+     */
+    public static Sink forBuffer(ByteBuffer buffer) { return new BufferSink(buffer); }
+
+    public static class WriteFailedException extends RuntimeException
+    {
+        public WriteFailedException(IOException cause) { super(cause); }
+
+        @Override
+        public IOException getCause() { return (IOException) super.getCause(); }
+    }
+
+    public static class StringSink extends Sink
+    {
+        private final StringBuilder stringBuilder = new StringBuilder();
+
+        @Override public void append(char c) { stringBuilder.append(c); }
+        @Override public void append(CharSequence text) { stringBuilder.append(text); }
+        @Override public void append(char[] chars, int offset, int length) { stringBuilder.append(chars, offset, length); }
+
+        public int length() { return stringBuilder.length(); }
+        public void clear() { stringBuilder.setLength(0); }
+
+        public String toString() { return stringBuilder.toString(); }
+    }
+
+    /**
+     * Feeds the output into a 128-bit Murmur3 hash instead of keeping it, so comparing or
+     * deduplicating output allocates nothing per token. {@link #hash()} equals
+     * {@link #hashOf(CharSequence)} of the text the sink would otherwise have received.
+     */
+    public static class HashingSink extends Sink
+    {
+        private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+        private final Hasher hasher = HASH_FUNCTION.newHasher();
+
+        @Override public void append(char c) { hasher.putChar(c); }
+        @Override public void append(CharSequence text) { hasher.putUnencodedChars(text); }
+
+        @Override
+        public void append(char[] chars, int offset, int length)
+        {
+            for (int i = offset; i < offset + length; ++i) hasher.putChar(chars[i]);
+        }
+
+        /**
+         * Can only be called once, after all output has been appended.
+         */
+        public HashCode hash() { return hasher.hash(); }
+
+        public static HashCode hashOf(CharSequence text) { return HASH_FUNCTION.hashUnencodedChars(text); }
+    }
+
+    private static class AppendableSink extends Sink
+    {
+        private final Appendable appendable;
+
+        AppendableSink(Appendable appendable) { this.appendable = appendable; }
+
+        @Override
+        public void append(char c)
+        {
+            try
+            {
+                appendable.append(c);
+            }
+            catch (IOException e)
+            {
+                throw new WriteFailedException(e);
+            }
+        }
+
+        @Override
+        public void append(CharSequence text)
+        {
+            try
+            {
+                appendable.append(text);
+            }
+            catch (IOException e)
+            {
+                throw new WriteFailedException(e);
+            }
+        }
+    }
+
+    private static class WriterSink extends AppendableSink
+    {
+        private final Writer writer;
+
+        WriterSink(Writer writer)
+        {
+            super(writer);
+            this.writer = writer;
+        }
+
+        @Override
+        public void append(char[] chars, int offset, int length)
+        {
+            try
+            {
+                writer.write(chars, offset, length);
+            }
+            catch (IOException e)
+            {
+                throw new WriteFailedException(e);
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+            try
+            {
+                writer.flush();
+            }
+            catch (IOException e)
+            {
+                throw new WriteFailedException(e);
+            }
+        }
+    }
+
+    /**
+     * Hand-rolled UTF-8 encoder, so that appending a token never allocates. Unpaired surrogates are
+     * written as '?', as the JDK encoders do.
+     */
+    private abstract static class Utf8Sink extends Sink
+    {
+        protected final ByteBuffer buffer;
+        private char highSurrogate = 0;
+
+        Utf8Sink(ByteBuffer buffer) { this.buffer = buffer; }
+
+        /**
+         * Makes room in the buffer for at least one more encoded character.
+         */
+        protected abstract void drain();
+
+        @Override
+        public void append(char c)
+        {
+            if (highSurrogate != 0)
+            {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c))
+                {
+                    int codePoint = Character.toCodePoint(high, c);
+                    ensureRemaining(4);
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                    return;
+                }
+                ensureRemaining(1);
+                buffer.put((byte) '?');
+            }
+
+            if (c < 0x80)
+            {
+                ensureRemaining(1);
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                ensureRemaining(2);
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+                highSurrogate = c;
+            }
+            else if (Character.isLowSurrogate(c))
+            {
+                ensureRemaining(1);
+                buffer.put((byte) '?');
+            }
+            else
+            {
+                ensureRemaining(3);
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        @Override
+        public void append(CharSequence text)
+        {
+            for (int i = 0; i < text.length(); ++i) append(text.charAt(i));
+        }
+
+        @Override
+        public void append(char[] chars, int offset, int length)
+        {
+            for (int i = offset; i < offset + length; ++i) append(chars[i]);
+        }
+
+        @Override
+        public void flush()
+        {
+            if (highSurrogate != 0)
+            {
+                highSurrogate = 0;
+                ensureRemaining(1);
+                buffer.put((byte) '?');
+            }
+        }
+
+        private void ensureRemaining(int bytes)
+        {
+            if (buffer.remaining() < bytes) drain();
+        }
+    }
+
+    private static class ChannelSink extends Utf8Sink
+    {
+        private final WritableByteChannel channel;
+
+        ChannelSink(WritableByteChannel channel, ByteBuffer buffer)
+        {
+            super(buffer);
+            this.channel = channel;
+        }
+
+        @Override
+        protected void drain()
+        {
+            buffer.flip();
+            try
+            {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            catch (IOException e)
+            {
+                throw new WriteFailedException(e);
+            }
+            finally
+            {
+                buffer.compact();
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+            super.flush();
+            drain();
+        }
+    }
+
+    private static class BufferSink extends Utf8Sink
+    {
+        BufferSink(ByteBuffer buffer) { super(buffer); }
+
+        @Override
+        protected void drain() { throw new BufferOverflowException(); }
+    }
+}
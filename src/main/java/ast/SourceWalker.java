@@ -0,0 +1,200 @@
+package ast;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds source files under a directory and hands each one to a {@link Listener} as soon as it is
+ * seen, instead of collecting and sorting the whole tree first. Every directory is walked by its
+ * own fork/join task, so large trees are listed in parallel, and excluded directories are never
+ * entered.
+ *
+ * Patterns are globs (see {@link FileSystem#getPathMatcher(String)}). A pattern without a '/' is
+ * matched against the file or directory name, anything else against the path relative to the root.
+ */
+public class SourceWalker
+{
+    /**
+     * Called once for each matching file. Calls come from several threads at once.
+     */
+    public interface Listener
+    {
+        void onFile(Path file);
+    }
+
+    private final int parallelism;
+    private final List<String> includes = new ArrayList<String>();
+    private final List<String> excludes = new ArrayList<String>();
+
+    public SourceWalker()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SourceWalker(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Only report files matching one of the included patterns. With no includes, every file is reported.
+     */
+    public SourceWalker include(String glob)
+    {
+        includes.add(glob);
+        return this;
+    }
+
+    /**
+     * Skip directories matching the pattern, along with everything under them.
+     */
+    public SourceWalker exclude(String glob)
+    {
+        excludes.add(glob);
+        return this;
+    }
+
+    /**
+     * Walks the tree and returns once every matching file has been passed to the listener.
+     */
+    public void walk(Path root, Listener listener) throws IOException
+    {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try
+        {
+            pool.invoke(new Walk(new Matchers(root), root, listener));
+        }
+        catch (WalkFailedException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private class Matchers
+    {
+        final Path root;
+        final List<PathMatcher> includeNames = new ArrayList<PathMatcher>();
+        final List<PathMatcher> includePaths = new ArrayList<PathMatcher>();
+        final List<PathMatcher> excludeNames = new ArrayList<PathMatcher>();
+        final List<PathMatcher> excludePaths = new ArrayList<PathMatcher>();
+
+        Matchers(Path root)
+        {
+            this.root = root;
+            FileSystem fileSystem = root.getFileSystem();
+            for (String glob : includes)
+            {
+                (glob.contains("/") ? includePaths : includeNames).add(fileSystem.getPathMatcher("glob:" + glob));
+            }
+            for (String glob : excludes)
+            {
+                (glob.contains("/") ? excludePaths : excludeNames).add(fileSystem.getPathMatcher("glob:" + glob));
+            }
+        }
+
+        boolean isIncluded(Path file)
+        {
+            return (includeNames.isEmpty() && includePaths.isEmpty()) || matches(file, includeNames, includePaths);
+        }
+
+        boolean isExcluded(Path directory)
+        {
+            return !directory.equals(root) && matches(directory, excludeNames, excludePaths);
+        }
+
+        private boolean matches(Path path, List<PathMatcher> byName, List<PathMatcher> byPath)
+        {
+            Path name = path.getFileName();
+            for (PathMatcher matcher : byName)
+            {
+                if (name != null && matcher.matches(name)) return true;
+            }
+            Path relative = root.relativize(path);
+            for (PathMatcher matcher : byPath)
+            {
+                if (matcher.matches(relative)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lists one directory, reporting its files and forking a new walk for each subdirectory.
+     */
+    private static class Walk extends RecursiveAction
+    {
+        private final Matchers matchers;
+        private final Path directory;
+        private final Listener listener;
+
+        Walk(Matchers matchers, Path directory, Listener listener)
+        {
+            this.matchers = matchers;
+            this.directory = directory;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final List<Walk> subdirectories = new ArrayList<Walk>();
+            try
+            {
+                Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, new SimpleFileVisitor<Path>()
+                {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    {
+                        if (dir.equals(directory)) return FileVisitResult.CONTINUE;
+                        if (!matchers.isExcluded(dir))
+                        {
+                            Walk walk = new Walk(matchers, dir, listener);
+                            walk.fork();
+                            subdirectories.add(walk);
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    {
+                        if (attrs.isRegularFile() && matchers.isIncluded(file)) listener.onFile(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+            catch (IOException e)
+            {
+                throw new WalkFailedException(e);
+            }
+            finally
+            {
+                for (Walk walk : subdirectories) walk.join();
+            }
+        }
+    }
+
+    private static class WalkFailedException extends RuntimeException
+    {
+        WalkFailedException(IOException cause)
+        {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause()
+        {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ast;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link MinifierEngine} per worker thread, created the first time the thread asks for one and
+ * kept for every task after that, since engines are not thread-safe but are expensive to set up.
+ *
+ * The engines are held here rather than in a ThreadLocal, because the threads often belong to a
+ * caller's executor and outlive this object: a ThreadLocal would keep each closed engine reachable
+ * from its thread for as long as the thread lives. An engine lives until {@link #close()}, or until
+ * its thread has died and another thread asks for an engine.
+ */
+class ThreadLocalEngines implements Closeable
+{
+    private final ConcurrentMap<Thread, MinifierEngine> engines = new ConcurrentHashMap<Thread, MinifierEngine>();
+    private final Charset charset;
+
+    ThreadLocalEngines(Charset charset)
+    {
+        this.charset = charset;
+    }
+
+    public MinifierEngine get()
+    {
+        Thread thread = Thread.currentThread();
+        MinifierEngine engine = engines.get(thread);
+        if (engine == null)
+        {
+            // Only this thread ever adds its own entry, so there is no race to lose.
+            closeEnginesOfDeadThreads();
+            engine = new MinifierEngine(charset);
+            engines.put(thread, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Pools that replace their threads, such as cached ones, would otherwise pile up engines.
+     */
+    private void closeEnginesOfDeadThreads()
+    {
+        Iterator<Map.Entry<Thread, MinifierEngine>> entries = engines.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<Thread, MinifierEngine> entry = entries.next();
+            if (!entry.getKey().isAlive() && engines.remove(entry.getKey(), entry.getValue()))
+            {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /**
+     * Closes every engine handed out so far. Only call this once no thread is using them any more.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        Iterator<MinifierEngine> iterator = engines.values().iterator();
+        while (iterator.hasNext())
+        {
+            MinifierEngine engine = iterator.next();
+            iterator.remove();
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package ast;
+
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.Token;
+import com.sun.tools.javac.util.Convert;
+
+import javax.lang.model.element.Modifier;
+import java.util.EnumSet;
+
+/**
+ * Minifies from the javac Scanner's token stream, without building a syntax tree. Like
+ * {@link ASTVisitor.Processor}, it only keeps a space between two word tokens, and it reproduces the
+ * places where the tree-based minifier does not simply echo its input:
+ *
+ * - literals are respelled the way JCLiteral.toString() prints them (hex becomes decimal, char and
+ *   string escapes are normalized, float and long suffixes are upper case);
+ * - a '-' directly before a decimal literal is folded into the literal, as the parser does;
+ * - annotations are printed before modifiers, and modifiers are sorted into Modifier order.
+ *
+ * Constructs that ASTVisitor rewrites or cannot handle at all (declarations of several variables,
+ * C-style array declarators, varargs, enums, annotation types, labels, stray semicolons, a missing
+ * package clause) are echoed as written, so only sources that ASTVisitor handles are guaranteed to
+ * produce identical output.
+ */
+public class TokenMinifier
+{
+    private enum State { NORMAL, ANNOTATION_NAME, ANNOTATION_ARGUMENTS }
+
+    // Keyword for each Modifier, indexed by ordinal, so flushing modifiers doesn't lower-case enum names.
+    private static final String[] MODIFIER_KEYWORDS = new String[Modifier.values().length];
+    static
+    {
+        for (Modifier modifier : Modifier.values()) MODIFIER_KEYWORDS[modifier.ordinal()] = modifier.toString();
+    }
+
+    private final ASTVisitor.Processor processor;
+
+    private final EnumSet<Modifier> pendingModifiers = EnumSet.noneOf(Modifier.class);
+    private State state = State.NORMAL;
+    private boolean expectAnnotationName = false;
+    private int annotationDepth = 0;
+    private Token previous = Token.EOF;
+
+    public TokenMinifier(ASTVisitor.Processor processor)
+    {
+        this.processor = processor;
+    }
+
+    public void minify(Scanner scanner)
+    {
+        scanner.nextToken();
+        while (scanner.token() != Token.EOF)
+        {
+            Token token = scanner.token();
+
+            if (state == State.ANNOTATION_NAME)
+            {
+                if (token == (expectAnnotationName ? Token.IDENTIFIER : Token.DOT))
+                {
+                    expectAnnotationName = !expectAnnotationName;
+                    emit(scanner);
+                    scanner.nextToken();
+                    continue;
+                }
+                state = State.NORMAL;
+                if (token == Token.LPAREN)
+                {
+                    state = State.ANNOTATION_ARGUMENTS;
+                    annotationDepth = 0;
+                }
+            }
+
+            if (state == State.ANNOTATION_ARGUMENTS)
+            {
+                if (token == Token.LPAREN) ++annotationDepth;
+                else if (token == Token.RPAREN && --annotationDepth == 0) state = State.NORMAL;
+                if (token == Token.SUB)
+                {
+                    emitMinus(scanner);
+                    continue;
+                }
+                emit(scanner);
+                scanner.nextToken();
+                continue;
+            }
+
+            if (token == Token.MONKEYS_AT)
+            {
+                scanner.nextToken();
+                if (scanner.token() != Token.INTERFACE)
+                {
+                    state = State.ANNOTATION_NAME;
+                    expectAnnotationName = true;
+                }
+                else flushModifiers();
+                processor.processSymbol("@");
+                previous = Token.MONKEYS_AT;
+                continue;
+            }
+
+            if (token == Token.SYNCHRONIZED)
+            {
+                scanner.nextToken();
+                if (scanner.token() == Token.LPAREN)
+                {
+                    flushModifiers();
+                    processor.processKeyword("synchronized");
+                }
+                else pendingModifiers.add(Modifier.SYNCHRONIZED);
+                previous = Token.SYNCHRONIZED;
+                continue;
+            }
+
+            Modifier modifier = modifierFor(token);
+            if (modifier != null)
+            {
+                pendingModifiers.add(modifier);
+                previous = token;
+                scanner.nextToken();
+                continue;
+            }
+
+            flushModifiers();
+
+            if (token == Token.SUB)
+            {
+                emitMinus(scanner);
+                continue;
+            }
+
+            emit(scanner);
+            scanner.nextToken();
+        }
+        flushModifiers();
+    }
+
+    /**
+     * Folds a unary minus into a following decimal literal, as the parser does. After ')' a minus is
+     * binary unless the parenthesis closed a cast, which tokens can't tell apart; only a literal too
+     * large to stand on its own, as in (int)-2147483648, must follow a cast.
+     */
+    private void emitMinus(Scanner scanner)
+    {
+        boolean afterParenthesis = previous == Token.RPAREN;
+        if (endsOperand(previous) && !afterParenthesis)
+        {
+            emit(scanner);
+            scanner.nextToken();
+            return;
+        }
+        scanner.nextToken();
+        if (isDecimalIntegral(scanner) && (!afterParenthesis || !fitsUnsigned(scanner)))
+        {
+            processor.processLiteral(integralLiteral(scanner, "-"));
+            previous = scanner.token();
+            scanner.nextToken();
+        }
+        else
+        {
+            processor.processSymbol("-");
+            previous = Token.SUB;
+        }
+    }
+
+    private void emit(Scanner scanner)
+    {
+        Token token = scanner.token();
+        previous = token;
+        switch (token)
+        {
+            case IDENTIFIER:
+                processor.processName(scanner.name());
+                break;
+            case INTLITERAL:
+            case LONGLITERAL:
+                processor.processLiteral(integralLiteral(scanner, ""));
+                break;
+            case FLOATLITERAL:
+                processor.processLiteral(Float.valueOf(floatingText(scanner)) + "F");
+                break;
+            case DOUBLELITERAL:
+                processor.processLiteral(Double.valueOf(floatingText(scanner)).toString());
+                break;
+            case CHARLITERAL:
+                processor.processLiteral("'" + Convert.quote(scanner.stringVal()) + "'");
+                break;
+            case STRINGLITERAL:
+                processor.processLiteral("\"" + Convert.quote(scanner.stringVal()) + "\"");
+                break;
+            case TRUE:
+            case FALSE:
+            case NULL:
+                processor.processLiteral(token.name);
+                break;
+            case ERROR:
+                throw new IllegalArgumentException("Could not tokenize input at position " + scanner.pos());
+            default:
+                if (token.name == null) throw new IllegalArgumentException("Unhandled token " + token);
+                if (Character.isJavaIdentifierStart(token.name.charAt(0))) processor.processKeyword(token.name);
+                else processor.processSymbol(token.name);
+        }
+    }
+
+    private void flushModifiers()
+    {
+        if (pendingModifiers.isEmpty()) return;
+        for (Modifier modifier : pendingModifiers)
+        {
+            processor.processKeyword(MODIFIER_KEYWORDS[modifier.ordinal()]);
+        }
+        pendingModifiers.clear();
+    }
+
+    private static boolean isDecimalIntegral(Scanner scanner)
+    {
+        return (scanner.token() == Token.INTLITERAL || scanner.token() == Token.LONGLITERAL) && scanner.radix() == 10;
+    }
+
+    private static String integralLiteral(Scanner scanner, String prefix)
+    {
+        String digits = prefix + scanner.stringVal();
+        try
+        {
+            if (scanner.token() == Token.LONGLITERAL) return Convert.string2long(digits, scanner.radix()) + "L";
+            return Integer.toString(Convert.string2int(digits, scanner.radix()));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Integer literal out of range at position " + scanner.pos());
+        }
+    }
+
+    private static boolean fitsUnsigned(Scanner scanner)
+    {
+        try
+        {
+            if (scanner.token() == Token.LONGLITERAL) Convert.string2long(scanner.stringVal(), scanner.radix());
+            else Convert.string2int(scanner.stringVal(), scanner.radix());
+            return true;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    private static String floatingText(Scanner scanner)
+    {
+        return scanner.radix() == 16 ? "0x" + scanner.stringVal() : scanner.stringVal();
+    }
+
+    /**
+     * A '-' after one of these is a binary minus; anywhere else it is unary, and the parser folds it
+     * into a following decimal literal (which is also the only way to write Integer.MIN_VALUE).
+     */
+    private static boolean endsOperand(Token token)
+    {
+        switch (token)
+        {
+            case IDENTIFIER:
+            case INTLITERAL:
+            case LONGLITERAL:
+            case FLOATLITERAL:
+            case DOUBLELITERAL:
+            case CHARLITERAL:
+            case STRINGLITERAL:
+            case TRUE:
+            case FALSE:
+            case NULL:
+            case THIS:
+            case SUPER:
+            case CLASS:
+            case RPAREN:
+            case RBRACKET:
+            case PLUSPLUS:
+            case SUBSUB:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Modifier modifierFor(Token token)
+    {
+        switch (token)
+        {
+            case PUBLIC: return Modifier.PUBLIC;
+            case PROTECTED: return Modifier.PROTECTED;
+            case PRIVATE: return Modifier.PRIVATE;
+            case ABSTRACT: return Modifier.ABSTRACT;
+            case STATIC: return Modifier.STATIC;
+            case FINAL: return Modifier.FINAL;
+            case TRANSIENT: return Modifier.TRANSIENT;
+            case VOLATILE: return Modifier.VOLATILE;
+            case NATIVE: return Modifier.NATIVE;
+            case STRICTFP: return Modifier.STRICTFP;
+            default: return null;
+        }
+    }
+}
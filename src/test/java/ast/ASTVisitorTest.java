@@ -3,14 +3,13 @@ package ast;
 import com.google.common.io.Files;
 import junit.framework.TestCase;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.SortedMap;
 
 /**
  * Created with IntelliJ IDEA.
@@ -24,99 +23,148 @@ public class ASTVisitorTest extends TestCase
     public void testOnMetromileCode() throws IOException {
         String dirname = "/Users/dannygoodman/Sites/metromile/mms/";
 
+        long start = System.nanoTime();
+        SortedMap<Path, String> minifiedFiles;
+        BatchMinifier batchMinifier = new BatchMinifier();
+        try
+        {
+            SourceWalker walker = new SourceWalker().include("*.java").exclude(".git").exclude("target");
+            minifiedFiles = batchMinifier.minifyTree(walker, Paths.get(dirname));
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+        System.out.println("Minified "+minifiedFiles.size()+" files in "+(System.nanoTime() - start) / 1000000+" ms");
+
         long originalSize = 0;
         long compressedSize = 0;
-        for (File file : FileListing.listFiles(dirname))
+        long renamedSize = 0;
+        long renamedBaseSize = 0;
+        long mangledSize = 0;
+        long mangledBaseSize = 0;
+        MinifierEngine engine = new MinifierEngine();
+        try
         {
-            String filename = file.toString();
-            if (filename.length() > 5 && filename.substring(filename.length()-5).equalsIgnoreCase(".java"))
+            for (Map.Entry<Path, String> entry : minifiedFiles.entrySet())
             {
-                String thisFileContents = Files.toString(file, Charset.defaultCharset());
+                String filename = entry.getKey().toString();
+                String thisFileContents = Files.toString(entry.getKey().toFile(), Charset.defaultCharset());
                 System.out.println("Minified "+filename+":");
-                String minified = ASTVisitor.minify(thisFileContents);
+                String minified = entry.getValue();
                 System.out.println(minified);
                 try
                 {
-                    assertEquals(minified, ASTVisitor.minify(minified));
+                    assertEquals(Sink.HashingSink.hashOf(minified), engine.hash(minified));
                 }
                 catch (Exception e)
                 {
                     System.out.println("FAILED on file: "+filename);
                     continue;
                 }
+                if (!minified.equals(engine.minify(thisFileContents, EnumSet.of(MinifyOption.TOKENS_ONLY))))
+                {
+                    System.out.println("TOKEN PATH DIFFERS on file: "+filename);
+                }
                 originalSize += thisFileContents.length();
                 compressedSize += minified.length();
+
+                // Each pass is compared against plain minification of the files it succeeded on.
+                try
+                {
+                    renamedSize += engine.minify(thisFileContents, EnumSet.of(MinifyOption.RENAME_LOCALS)).length();
+                    renamedBaseSize += minified.length();
+                }
+                catch (Exception e)
+                {
+                    System.out.println("RENAME FAILED on file: "+filename+": "+e);
+                }
+                try
+                {
+                    mangledSize += engine.minify(thisFileContents, EnumSet.of(MinifyOption.RENAME_LOCALS, MinifyOption.MANGLE_PRIVATES)).length();
+                    mangledBaseSize += minified.length();
+                }
+                catch (Exception e)
+                {
+                    System.out.println("MANGLE FAILED on file: "+filename+": "+e);
+                }
             }
         }
+        finally
+        {
+            engine.close();
+        }
 
         System.out.println("Total original characters: "+originalSize);
         System.out.println("Total compressed characters: "+compressedSize);
+        System.out.println("Total with renamed locals: "+renamedSize+" ("+(100 - 100 * renamedSize / Math.max(renamedBaseSize, 1))+"% smaller)");
+        System.out.println("Total with mangled privates too: "+mangledSize+" ("+(100 - 100 * mangledSize / Math.max(mangledBaseSize, 1))+"% smaller)");
     }
 
+    public void testOperators()
+    {
+        String source = "package p;class C{int f(int a,int b){a&=b;a|=b<<2;return~a&b|a^-b>>>1;}}";
+        assertEquals(source, ASTVisitor.minify(source));
+    }
 
+    public void testVisitTreeIgnoresNull()
+    {
+        ASTVisitor visitor = new ASTVisitor();
+        visitor.visitTree(null);
+        assertEquals("", visitor.getProcessor().toString());
+    }
 
+    public void testNamesAndModifiers()
+    {
+        String source = "package p;public abstract class Caf\u00e9<T>{protected static final int \u4e2d\u6587=1;Caf\u00e9(){}public synchronized native void run();}";
+        assertEquals(source, ASTVisitor.minify(source));
+    }
 
-    // Stolen from somewhere ... stack overflow?
-    public static final class FileListing {
-        public static List<File> listFiles(String directory) throws FileNotFoundException {
-            File startingDirectory= new File(directory);
-            FileListing listing = new FileListing();
-            return listing.getFileListing(startingDirectory);
-        }
-
-        /**
-         * Recursively walk a directory tree and return a List of all
-         * Files found; the List is sorted using File.compareTo().
-         *
-         * @param aStartingDir is a valid directory, which can be read.
-         */
-        public List<File> getFileListing(
-                File aStartingDir
-        ) throws FileNotFoundException {
-            validateDirectory(aStartingDir);
-            List<File> result = getFileListingNoSort(aStartingDir);
-            Collections.sort(result);
-            return result;
+    public void testDeepChainsDoNotExhaustStack() throws Throwable
+    {
+        int terms = 20000;
+        final StringBuilder concatenation = new StringBuilder("package deep;class Deep{String s=(a");
+        final StringBuilder chain = new StringBuilder("package deep;class Deep{Object o=builder");
+        for (int i = 0; i < terms; ++i)
+        {
+            concatenation.append("+a");
+            chain.append(".with(").append(i).append(").field");
         }
+        concatenation.append(")+b.c;}");
+        chain.append(".build();}");
 
-        // PRIVATE
-
-        private List<File> getFileListingNoSort(
-                File aStartingDir
-        ) throws FileNotFoundException {
-            List<File> result = new ArrayList<File>();
-            File[] filesAndDirs = aStartingDir.listFiles();
-            List<File> filesDirs = Arrays.asList(filesAndDirs);
-            for(File file : filesDirs) {
-                result.add(file); //always add, even if directory
-                if (! file.isFile()) {
-                    //must be a directory
-                    //recursive call!
-                    List<File> deeperList = getFileListingNoSort(file);
-                    result.addAll(deeperList);
+        final String[] minified = new String[2];
+        final Throwable[] failure = new Throwable[1];
+        // A small stack, so recursing once per term would overflow it.
+        Thread thread = new Thread(null, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    MinifierEngine engine = new MinifierEngine();
+                    try
+                    {
+                        minified[0] = engine.minify(concatenation);
+                        minified[1] = engine.minify(chain);
+                    }
+                    finally
+                    {
+                        engine.close();
+                    }
+                }
+                catch (Throwable t)
+                {
+                    failure[0] = t;
                 }
             }
-            return result;
-        }
+        }, "deep-chains", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (failure[0] != null) throw failure[0];
 
-        /**
-         * Directory is valid if it exists, does not represent a file, and can be read.
-         */
-        private void validateDirectory (
-                File aDirectory
-        ) throws FileNotFoundException {
-            if (aDirectory == null) {
-                throw new IllegalArgumentException("Directory should not be null.");
-            }
-            if (!aDirectory.exists()) {
-                throw new FileNotFoundException("Directory does not exist: " + aDirectory);
-            }
-            if (!aDirectory.isDirectory()) {
-                throw new IllegalArgumentException("Is not a directory: " + aDirectory);
-            }
-            if (!aDirectory.canRead()) {
-                throw new IllegalArgumentException("Directory cannot be read: " + aDirectory);
-            }
-        }
+        assertEquals(concatenation.toString(), minified[0]);
+        assertEquals(chain.toString(), minified[1]);
     }
 }
@@ -0,0 +1,84 @@
+package ast;
+
+import com.google.common.io.ByteStreams;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class ArchiveMinifierTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static byte[] zip(Map<String, String> entries) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        for (Map.Entry<String, String> entry : entries.entrySet())
+        {
+            zip.putNextEntry(new ZipEntry(entry.getKey()));
+            if (entry.getValue() != null) zip.write(entry.getValue().getBytes(UTF_8));
+            zip.closeEntry();
+        }
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    static Map<String, String> unzip(byte[] archive) throws IOException
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null)
+        {
+            entries.put(entry.getName(), entry.isDirectory() ? null : new String(ByteStreams.toByteArray(zip), UTF_8));
+        }
+        return entries;
+    }
+
+    public void testMinifiesJavaEntriesAndKeepsResources() throws IOException
+    {
+        Map<String, String> input = new LinkedHashMap<String, String>();
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        input.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+        input.put("sample/", null);
+        for (int i = 0; i < 30; ++i)
+        {
+            input.put("sample/Sample" + i + ".java", MinifierEngineTest.SAMPLE.replace("Sample", "Sample" + i));
+            if (i == 10) input.put("sample/messages.properties", "greeting = hello   world\n");
+        }
+        input.put("sample/Broken.java", "class {");
+        expected.putAll(input);
+        for (int i = 0; i < 30; ++i)
+        {
+            expected.put("sample/Sample" + i + ".java", MinifierEngineTest.SAMPLE_MINIFIED.replace("Sample", "Sample" + i));
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        List<String> unminified;
+        BatchMinifier batchMinifier = new BatchMinifier(3);
+        try
+        {
+            // A small window, so entries are written while later ones are still being read.
+            unminified = new ArchiveMinifier(batchMinifier, 4).minify(new ByteArrayInputStream(zip(input)), output);
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+        assertEquals(1, unminified.size());
+        assertTrue(unminified.get(0), unminified.get(0).startsWith("sample/Broken.java: java.lang.IllegalArgumentException"));
+        Map<String, String> actual = unzip(output.toByteArray());
+        assertEquals(expected, actual);
+        assertEquals(new ArrayList<String>(input.keySet()), new ArrayList<String>(actual.keySet()));
+    }
+}
@@ -0,0 +1,197 @@
+package ast;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncMinifierTest extends TestCase
+{
+    /**
+     * Holds tasks until the test runs them, so it can see what is in flight.
+     */
+    private static class ManualExecutor implements Executor
+    {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public synchronized void execute(Runnable task)
+        {
+            queued.add(task);
+        }
+
+        synchronized int size()
+        {
+            return queued.size();
+        }
+
+        void runAll()
+        {
+            List<Runnable> tasks;
+            synchronized (this)
+            {
+                tasks = new ArrayList<Runnable>(queued);
+                queued.clear();
+            }
+            for (Runnable task : tasks) task.run();
+        }
+    }
+
+    public void testCoalescesIdenticalRequestsInFlight() throws IOException, InterruptedException, ExecutionException
+    {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncMinifier minifier = new AsyncMinifier(executor, 10);
+        try
+        {
+            StringBuilder source = new StringBuilder(MinifierEngineTest.SAMPLE);
+            ListenableFuture<String> first = minifier.minifyAsync(source);
+            // The code was copied, so changing the builder afterwards can't affect the result.
+            source.setLength(0);
+            ListenableFuture<String> second = minifier.minifyAsync(MinifierEngineTest.SAMPLE);
+            ListenableFuture<String> other = minifier.minifyAsync(MinifierEngineTest.SAMPLE.replace("count", "counted"));
+            assertEquals(2, executor.size());
+            assertEquals(1, minifier.coalescedCount());
+
+            executor.runAll();
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, first.get());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, second.get());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED.replace("count", "counted"), other.get());
+
+            // Only requests in flight are shared; a completed one is not kept around.
+            ListenableFuture<String> again = minifier.minifyAsync(MinifierEngineTest.SAMPLE);
+            assertEquals(1, executor.size());
+            assertEquals(1, minifier.coalescedCount());
+            executor.runAll();
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, again.get());
+        }
+        finally
+        {
+            minifier.close();
+        }
+    }
+
+    public void testBlocksBeyondMaxPending() throws IOException, InterruptedException, ExecutionException
+    {
+        ManualExecutor executor = new ManualExecutor();
+        final AsyncMinifier minifier = new AsyncMinifier(executor, 2);
+        try
+        {
+            minifier.minifyAsync("package p;class A{}");
+            minifier.minifyAsync("package p;class B{}");
+            // Identical requests share a slot instead of taking a new one.
+            minifier.minifyAsync("package p;class A{}");
+
+            final List<ListenableFuture<String>> third = new ArrayList<ListenableFuture<String>>();
+            Thread caller = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    third.add(minifier.minifyAsync("package p;class C{}"));
+                }
+            };
+            caller.start();
+            caller.join(200);
+            assertTrue("Expected the third distinct request to wait for a slot", caller.isAlive());
+
+            executor.runAll();
+            caller.join();
+            executor.runAll();
+            assertEquals("package p;class C{}", third.get(0).get());
+        }
+        finally
+        {
+            minifier.close();
+        }
+    }
+
+    public void testFailsFastWithoutTimeToWait() throws IOException, InterruptedException, ExecutionException
+    {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncMinifier minifier = new AsyncMinifier(executor, 1);
+        try
+        {
+            ListenableFuture<String> first = minifier.minifyAsync("package p;class A{}");
+            try
+            {
+                minifier.minifyAsync("package p;class B{}", Collections.<MinifyOption>emptySet(), 0, TimeUnit.MILLISECONDS);
+                fail("Expected a second distinct request to be rejected");
+            }
+            catch (RejectedExecutionException e)
+            {
+                // expected
+            }
+            // Coalescing takes no slot, so it never has to wait.
+            ListenableFuture<String> second = minifier.minifyAsync("package p;class A{}", Collections.<MinifyOption>emptySet(), 0, TimeUnit.MILLISECONDS);
+            executor.runAll();
+            assertEquals("package p;class A{}", first.get());
+            assertEquals("package p;class A{}", second.get());
+
+            // The rejected request left nothing behind, and the slot is free again.
+            minifier.minifyAsync("package p;class B{}", Collections.<MinifyOption>emptySet(), 0, TimeUnit.MILLISECONDS);
+            assertEquals(1, executor.size());
+        }
+        finally
+        {
+            minifier.close();
+        }
+    }
+
+    public void testCancellingOneCallerLeavesTheOthers() throws IOException, InterruptedException, ExecutionException
+    {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncMinifier minifier = new AsyncMinifier(executor, 10);
+        try
+        {
+            ListenableFuture<String> first = minifier.minifyAsync(MinifierEngineTest.SAMPLE);
+            ListenableFuture<String> second = minifier.minifyAsync(MinifierEngineTest.SAMPLE);
+            assertTrue(first.cancel(true));
+            executor.runAll();
+            assertTrue(first.isCancelled());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, second.get());
+        }
+        finally
+        {
+            minifier.close();
+        }
+    }
+
+    public void testFailuresReachEveryCaller() throws IOException, InterruptedException
+    {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncMinifier minifier = new AsyncMinifier(executor, 10);
+        try
+        {
+            ListenableFuture<String> first = minifier.minifyAsync("class {");
+            ListenableFuture<String> second = minifier.minifyAsync("class {");
+            executor.runAll();
+            List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+            futures.add(first);
+            futures.add(second);
+            assertEquals(1, minifier.coalescedCount());
+            for (ListenableFuture<String> future : futures)
+            {
+                try
+                {
+                    future.get();
+                    fail("Expected the broken source to fail");
+                }
+                catch (ExecutionException e)
+                {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                }
+            }
+        }
+        finally
+        {
+            minifier.close();
+        }
+    }
+}
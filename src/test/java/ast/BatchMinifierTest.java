@@ -0,0 +1,259 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Uninterruptibles;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BatchMinifierTest extends TestCase
+{
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("batch-minifier");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        TestFiles.deleteRecursively(directory);
+    }
+
+    public void testResultsComeBackInInputOrder() throws IOException
+    {
+        List<Path> paths = new ArrayList<Path>();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 50; ++i)
+        {
+            String source = MinifierEngineTest.SAMPLE.replace("Sample", "Sample" + i);
+            paths.add(TestFiles.write(directory.resolve("Sample" + i + ".java"), source));
+            expected.add(MinifierEngineTest.SAMPLE_MINIFIED.replace("Sample", "Sample" + i));
+        }
+
+        BatchMinifier batchMinifier = new BatchMinifier(4);
+        try
+        {
+            assertEquals(expected, batchMinifier.minifyAll(paths));
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+    }
+
+    public void testCacheSkipsUnchangedFiles() throws IOException
+    {
+        List<Path> paths = new ArrayList<Path>();
+        for (int i = 0; i < 10; ++i)
+        {
+            paths.add(TestFiles.write(directory.resolve("Sample" + i + ".java"), MinifierEngineTest.SAMPLE.replace("Sample", "Sample" + i)));
+        }
+
+        MemoryMinificationCache cache = new MemoryMinificationCache(1 << 20);
+        BatchMinifier batchMinifier = new BatchMinifier(4);
+        try
+        {
+            batchMinifier.setCache(cache);
+            List<String> first = batchMinifier.minifyAll(paths);
+            assertEquals(first, batchMinifier.minifyAll(paths));
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+        assertEquals(10, cache.missCount());
+        assertEquals(10, cache.hitCount());
+    }
+
+    public void testLargestFilesRunFirst() throws Exception
+    {
+        // Padded with comments, which make the files bigger without changing their output.
+        int[] paddings = {3, 40, 0, 25, 10};
+        List<Path> paths = new ArrayList<Path>();
+        for (int i = 0; i < paddings.length; ++i)
+        {
+            StringBuilder source = new StringBuilder(MinifierEngineTest.SAMPLE.replace("Sample", "Sample" + i));
+            for (int j = 0; j < paddings[i]; ++j) source.append("// padding\n");
+            paths.add(TestFiles.write(directory.resolve("Sample" + i + ".java"), source.toString()));
+        }
+
+        // Records the order files are minified in, by the class name in their output.
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        MinificationCache recorder = new MinificationCache()
+        {
+            @Override
+            public String getIfPresent(HashCode key)
+            {
+                return null;
+            }
+
+            @Override
+            public void put(HashCode key, String minified)
+            {
+                order.add(minified.substring(minified.indexOf("class ") + 6, minified.indexOf('{')));
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch start = new CountDownLatch(1);
+        BatchMinifier batchMinifier = new BatchMinifier(executor, Charset.defaultCharset());
+        try
+        {
+            // Holds the only worker until everything is queued.
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Uninterruptibles.awaitUninterruptibly(start);
+                }
+            });
+            batchMinifier.setCache(recorder);
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (Path path : paths) futures.add(batchMinifier.submit(path));
+            start.countDown();
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                assertEquals(MinifierEngineTest.SAMPLE_MINIFIED.replace("Sample", "Sample" + i), futures.get(i).get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            batchMinifier.close();
+        }
+        assertEquals(Arrays.asList("Sample1", "Sample3", "Sample4", "Sample0", "Sample2"), order);
+    }
+
+    public void testRejectedFileIsNotLeftQueued() throws Exception
+    {
+        StringBuilder large = new StringBuilder(MinifierEngineTest.SAMPLE.replace("Sample", "Large"));
+        for (int i = 0; i < 40; ++i) large.append("// padding\n");
+        Path largePath = TestFiles.write(directory.resolve("Large.java"), large.toString());
+        Path smallPath = TestFiles.write(directory.resolve("Sample.java"), MinifierEngineTest.SAMPLE);
+
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>())
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                if (reject.getAndSet(false)) throw new RejectedExecutionException("Rejected for the test");
+                super.execute(command);
+            }
+        };
+        BatchMinifier batchMinifier = new BatchMinifier(executor, Charset.defaultCharset());
+        try
+        {
+            try
+            {
+                batchMinifier.submit(largePath);
+                fail("Expected the executor's rejection to reach the caller");
+            }
+            catch (RejectedExecutionException e)
+            {
+                // expected
+            }
+            // Had the rejected file stayed queued, it would have taken the worker meant for this one.
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, batchMinifier.submit(smallPath).get(1, TimeUnit.MINUTES));
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            batchMinifier.close();
+        }
+    }
+
+    public void testHashTreeFindsDuplicates() throws IOException
+    {
+        TestFiles.write(directory.resolve("a/Sample.java"), MinifierEngineTest.SAMPLE);
+        TestFiles.write(directory.resolve("b/Sample.java"), MinifierEngineTest.SAMPLE_MINIFIED);
+        TestFiles.write(directory.resolve("c/Sample.java"), MinifierEngineTest.SAMPLE.replace("count", "counted"));
+
+        SortedMap<Path, HashCode> hashes;
+        BatchMinifier batchMinifier = new BatchMinifier(2);
+        try
+        {
+            hashes = batchMinifier.hashTree(new SourceWalker().include("*.java"), directory);
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+        assertEquals(3, hashes.size());
+        assertEquals(Sink.HashingSink.hashOf(MinifierEngineTest.SAMPLE_MINIFIED), hashes.get(directory.resolve("a/Sample.java")));
+        assertEquals(Arrays.asList(Arrays.asList(directory.resolve("a/Sample.java"), directory.resolve("b/Sample.java"))),
+                BatchMinifier.duplicates(hashes));
+    }
+
+    public void testMissingFileIsReported() throws IOException
+    {
+        List<Path> paths = new ArrayList<Path>();
+        paths.add(directory.resolve("Missing.java"));
+
+        BatchMinifier batchMinifier = new BatchMinifier(2);
+        try
+        {
+            batchMinifier.minifyAll(paths);
+            fail("Expected the missing file to be reported");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("Missing.java"));
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+    }
+
+    static final class TestFiles
+    {
+        static Path write(Path path, String contents) throws IOException
+        {
+            Files.createDirectories(path.getParent());
+            return Files.write(path, contents.getBytes(Charset.defaultCharset()));
+        }
+
+        static void deleteRecursively(Path path) throws IOException
+        {
+            if (Files.isDirectory(path))
+            {
+                List<Path> children = new ArrayList<Path>();
+                java.nio.file.DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+                try
+                {
+                    for (Path child : stream) children.add(child);
+                }
+                finally
+                {
+                    stream.close();
+                }
+                for (Path child : children) deleteRecursively(child);
+            }
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+public class DiskMinificationCacheTest extends TestCase
+{
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("minification-cache");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        BatchMinifierTest.TestFiles.deleteRecursively(directory);
+    }
+
+    private static HashCode key(String contents)
+    {
+        return ContentHash.of(contents, Collections.<MinifyOption>emptySet());
+    }
+
+    public void testSurvivesReopening() throws IOException
+    {
+        DiskMinificationCache cache = new DiskMinificationCache(directory, 1 << 20);
+        try
+        {
+            MinifierEngine engine = new MinifierEngine();
+            try
+            {
+                engine.setCache(cache);
+                assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, engine.minify(MinifierEngineTest.SAMPLE));
+            }
+            finally
+            {
+                engine.close();
+            }
+        }
+        finally
+        {
+            cache.close();
+        }
+
+        cache = new DiskMinificationCache(directory, 1 << 20);
+        try
+        {
+            assertEquals(1, cache.size());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, cache.getIfPresent(key(MinifierEngineTest.SAMPLE)));
+            assertNull(cache.getIfPresent(key("class Missing{}")));
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    public void testGrowsIndex() throws IOException
+    {
+        DiskMinificationCache cache = new DiskMinificationCache(directory, 1 << 24);
+        try
+        {
+            for (int i = 0; i < 3000; ++i)
+            {
+                String minified = "class C" + i + "{}";
+                cache.put(key(minified), minified);
+            }
+            assertEquals(3000, cache.size());
+            for (int i = 0; i < 3000; ++i)
+            {
+                String minified = "class C" + i + "{}";
+                assertEquals(minified, cache.getIfPresent(key(minified)));
+            }
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    public void testCompactsToSizeCap() throws IOException
+    {
+        DiskMinificationCache cache = new DiskMinificationCache(directory, 8192);
+        try
+        {
+            for (int i = 0; i < 1000; ++i)
+            {
+                String minified = "class C" + i + "{}";
+                cache.put(key(minified), minified);
+            }
+            assertTrue(cache.size() < 1000);
+            assertTrue(Files.size(directory.resolve("segment")) <= 8192);
+            assertEquals("class C999{}", cache.getIfPresent(key("class C999{}")));
+            assertNull(cache.getIfPresent(key("class C0{}")));
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+
+    public void testStartsOverWhenSegmentIsShorterThanIndex() throws IOException
+    {
+        DiskMinificationCache cache = new DiskMinificationCache(directory, 8192);
+        try
+        {
+            for (int i = 0; i < 100; ++i)
+            {
+                String minified = "class C" + i + "{}";
+                cache.put(key(minified), minified);
+            }
+        }
+        finally
+        {
+            cache.close();
+        }
+
+        // What a crash between renaming the rewritten segment and index into place leaves behind.
+        FileChannel segment = FileChannel.open(directory.resolve("segment"), WRITE);
+        try
+        {
+            segment.truncate(segment.size() / 2);
+        }
+        finally
+        {
+            segment.close();
+        }
+
+        cache = new DiskMinificationCache(directory, 8192);
+        try
+        {
+            assertEquals(0, cache.size());
+            assertNull(cache.getIfPresent(key("class C99{}")));
+            // Enough to go through a rewrite, which must not spin on the missing bytes.
+            for (int i = 0; i < 1000; ++i)
+            {
+                String minified = "class C" + i + "{}";
+                cache.put(key(minified), minified);
+            }
+            assertEquals("class C999{}", cache.getIfPresent(key("class C999{}")));
+        }
+        finally
+        {
+            cache.close();
+        }
+    }
+}
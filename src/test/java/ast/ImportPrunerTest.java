@@ -0,0 +1,61 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+public class ImportPrunerTest extends TestCase
+{
+    private static String prune(String source) throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.minify(source, EnumSet.of(MinifyOption.DROP_UNUSED_IMPORTS));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testDropsUnusedImports() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "import java.io.File;\n" +
+                "import java.util.List;\n" +
+                "import java.util.Map;\n" +
+                "import java.util.ArrayList;\n" +
+                "import java.util.concurrent.*;\n" +
+                "import java.lang.annotation.Documented;\n" +
+                "import java.beans.ConstructorProperties;\n" +
+                "import static java.lang.Math.max;\n" +
+                "import static java.lang.Math.min;\n" +
+                "public class C {\n" +
+                "    @ConstructorProperties(\"entry\") public C(Map.Entry<String, List<Object>> entry) { this.entry = entry; }\n" +
+                "    Map.Entry<String, List<Object>> entry;\n" +
+                "    java.util.ArrayList<String> qualified;\n" +
+                "    int f(int a, int b) { return max(a, b); }\n" +
+                "}\n";
+        String pruned = prune(source);
+        assertEquals("package p;import java.util.List;import java.util.Map;import java.util.concurrent.*;" +
+                "import java.beans.ConstructorProperties;import static java.lang.Math.max;" +
+                "public class C{@ConstructorProperties(\"entry\")public C(Map.Entry<String,List<Object>>entry){this.entry=entry;}Map.Entry<String,List<Object>>entry;" +
+                "java.util.ArrayList<String>qualified;int f(int a,int b){return max(a,b);}}", pruned);
+        LocalRenamerTest.assertCompiles("C", pruned);
+    }
+
+    public void testKeepsImportsUsedByPackageAnnotations() throws IOException
+    {
+        String source =
+                "@Generated(\"tool\")\n" +
+                "package p;\n" +
+                "import javax.annotation.Generated;\n" +
+                "import java.util.List;\n";
+        String pruned = prune(source);
+        assertEquals("@Generated(\"tool\")package p;import javax.annotation.Generated;", pruned);
+        LocalRenamerTest.assertCompiles("package-info", pruned);
+    }
+}
@@ -0,0 +1,87 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+public class LiteralCompactorTest extends TestCase
+{
+    private static List<String> literals(MinifierEngine engine, String source)
+    {
+        final List<String> literals = new ArrayList<String>();
+        engine.parse(source).accept(new TreeScanner()
+        {
+            @Override
+            public void visitLiteral(JCTree.JCLiteral tree)
+            {
+                Object value = tree.getValue();
+                // Compare floating point by bits, so that a rounding difference can't hide.
+                if (value instanceof Float) value = Float.floatToRawIntBits((Float) value);
+                else if (value instanceof Double) value = Double.doubleToRawLongBits((Double) value);
+                literals.add(tree.getKind() + " " + value);
+            }
+        });
+        return literals;
+    }
+
+    public void testCompactsLiterals() throws IOException
+    {
+        String source = "package p;class C{double a=1000000.0;double b=0.5;double c=100.0;double d=1.0E-5;double e=0.0;double f=12.5;" +
+                "float g=100.0f;float h=0.1f;float i=3.4028235E38f;int j=255;int k=0x80000000;long l=-9223372036854775808L;long m=1000L;" +
+                "char n='A';char o='\"';char q='\\0';char r='\u00e9';String s=\"it's \\\"q\\\"\\0\\1\";String t=\"\\0001\u20ac\";}";
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String compacted = engine.minify(source, EnumSet.of(MinifyOption.COMPACT_LITERALS));
+            assertEquals("package p;class C{double a=1e6;double b=.5;double c=1e2;double d=1e-5;double e=0.;double f=12.5;" +
+                    "float g=100F;float h=.1F;float i=34028235e31F;int j=255;int k=0x80000000;long l=0x8000000000000000L;long m=1000L;" +
+                    "char n='A';char o='\"';char q='\\0';char r='\\351';String s=\"it's \\\"q\\\"\\0\\1\";String t=\"\\0001\\u20ac\";}", compacted);
+            assertEquals(literals(engine, source), literals(engine, compacted));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testPreservesRandomValues() throws IOException
+    {
+        Random random = new Random(17);
+        StringBuilder source = new StringBuilder("package p;class C{");
+        for (int i = 0; i < 500; ++i)
+        {
+            double d = Math.abs(Double.longBitsToDouble(random.nextLong()));
+            if (Double.isNaN(d) || Double.isInfinite(d)) d = random.nextDouble();
+            float f = Math.abs(Float.intBitsToFloat(random.nextInt()));
+            if (Float.isNaN(f) || Float.isInfinite(f)) f = random.nextFloat();
+            source.append("double d").append(i).append('=').append(d).append(';');
+            source.append("double e").append(i).append('=').append(random.nextInt(100000) / 1000.0).append(';');
+            source.append("float f").append(i).append('=').append(f).append("F;");
+            source.append("int g").append(i).append('=').append(random.nextInt()).append(';');
+            source.append("long h").append(i).append('=').append(random.nextLong()).append("L;");
+            // Unicode escapes are translated before lexing, so line breaks, quotes and backslashes have to be octal.
+            int c = random.nextInt(0x800);
+            String escape = c == '\n' || c == '\r' || c == '\'' || c == '\\' ? Integer.toOctalString(c) : String.format("u%04x", c);
+            source.append("char c").append(i).append("='\\").append(escape).append("';");
+        }
+        source.append('}');
+
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String compacted = engine.minify(source, EnumSet.of(MinifyOption.COMPACT_LITERALS));
+            assertTrue(compacted.length() < engine.minify(source).length());
+            assertEquals(literals(engine, source.toString()), literals(engine, compacted));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+}
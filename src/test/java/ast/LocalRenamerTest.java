@@ -0,0 +1,116 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+public class LocalRenamerTest extends TestCase
+{
+    private static String minify(String source) throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.minify(source, EnumSet.of(MinifyOption.RENAME_LOCALS));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    /**
+     * Compiles a single class, so that a wrong rename shows up as a compile error.
+     */
+    static void assertCompiles(final String className, final String source) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors)
+            {
+                return source;
+            }
+        };
+        Path output = Files.createTempDirectory("renamed");
+        try
+        {
+            boolean compiled = compiler.getTask(null, null, diagnostics, Arrays.asList("-d", output.toString()), null, Arrays.asList(file)).call();
+            assertTrue(source + "\n" + diagnostics.getDiagnostics(), compiled);
+        }
+        finally
+        {
+            BatchMinifierTest.TestFiles.deleteRecursively(output);
+        }
+    }
+
+    public void testRenamesByFrequency() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "import java.util.List;\n" +
+                "public class C {\n" +
+                "    private int total;\n" +
+                "    public int sum(List<Integer> values, int offset) {\n" +
+                "        int result = offset;\n" +
+                "        for (Integer value : values) { result += value; }\n" +
+                "        try { total = result / offset; } catch (ArithmeticException exception) { return -1; }\n" +
+                "        return result;\n" +
+                "    }\n" +
+                "}\n";
+        String renamed = minify(source);
+        assertEquals("package p;import java.util.List;public class C{private int total;" +
+                "public int sum(List<Integer>c,int b){int a=b;for(Integer d:c){a+=d;}" +
+                "try{total=a/b;}catch(ArithmeticException d){return -1;}return a;}}", renamed);
+        assertCompiles("C", renamed);
+    }
+
+    public void testLeavesCapturedLocalsAlone() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "public class C {\n" +
+                "    public Runnable task(final int count) {\n" +
+                "        return new Runnable() { public void run() { int local = count; System.out.println(local); } };\n" +
+                "    }\n" +
+                "}\n";
+        String renamed = minify(source);
+        assertEquals("package p;public class C{public Runnable task(final int count){return new Runnable(){" +
+                "public void run(){int a=count;System.out.println(a);}};}}", renamed);
+        assertCompiles("C", renamed);
+    }
+
+    public void testRespectsShadowingAndOtherNamespaces() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "public class C {\n" +
+                "    int a;\n" +
+                "    static int b() { return 1; }\n" +
+                "    int shadow(int a) {\n" +
+                "        this.a = a;\n" +
+                "        String String = \"text\";\n" +
+                "        final int LIMIT = 2;\n" +
+                "        int total = b() + String.length() + String.class.getName().length();\n" +
+                "        switch (total) { case LIMIT: total++; break; default: int extra = total; total += extra; }\n" +
+                "        { int inner = total; total += inner; }\n" +
+                "        { int other = total * 2; total -= other; }\n" +
+                "        return total;\n" +
+                "    }\n" +
+                "}\n";
+        String renamed = minify(source);
+        assertTrue(renamed, renamed.contains("this.a="));
+        assertTrue(renamed, renamed.contains("case LIMIT:"));
+        assertTrue(renamed, renamed.contains("String.class"));
+        assertFalse(renamed, renamed.contains("total"));
+        assertCompiles("C", renamed);
+    }
+}
@@ -0,0 +1,49 @@
+package ast;
+
+import com.google.common.hash.HashCode;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+
+public class MemoryMinificationCacheTest extends TestCase
+{
+    public void testEngineUsesCache() throws IOException
+    {
+        MemoryMinificationCache cache = new MemoryMinificationCache(1 << 20);
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            engine.setCache(cache);
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, engine.minify(MinifierEngineTest.SAMPLE));
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, engine.minify(MinifierEngineTest.SAMPLE));
+        }
+        finally
+        {
+            engine.close();
+        }
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    public void testOptionsArePartOfTheKey()
+    {
+        HashCode plain = ContentHash.of(MinifierEngineTest.SAMPLE, Collections.<MinifyOption>emptySet());
+        HashCode tokens = ContentHash.of(MinifierEngineTest.SAMPLE, EnumSet.of(MinifyOption.TOKENS_ONLY));
+        assertFalse(plain.equals(tokens));
+        assertEquals(plain, ContentHash.of(new StringBuilder(MinifierEngineTest.SAMPLE), Collections.<MinifyOption>emptySet()));
+    }
+
+    public void testEvictsWhenFull()
+    {
+        MemoryMinificationCache cache = new MemoryMinificationCache(4096);
+        for (int i = 0; i < 100; ++i)
+        {
+            String minified = "class C" + i + "{}";
+            cache.put(ContentHash.of(minified, Collections.<MinifyOption>emptySet()), minified);
+        }
+        assertTrue(cache.evictionCount() > 0);
+        assertTrue(cache.size() < 100);
+    }
+}
@@ -0,0 +1,156 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Name;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MinifierEngineTest extends TestCase
+{
+    static final String SAMPLE =
+            "package sample;\n" +
+            "\n" +
+            "import java.util.List;\n" +
+            "\n" +
+            "public class Sample\n" +
+            "{\n" +
+            "    private int count = 0; // running total\n" +
+            "\n" +
+            "    public int sum(List<Integer> values)\n" +
+            "    {\n" +
+            "        int total = 0;\n" +
+            "        for (Integer value : values)\n" +
+            "        {\n" +
+            "            if (value != null) total += value;\n" +
+            "        }\n" +
+            "        return total + count;\n" +
+            "    }\n" +
+            "}\n";
+
+    static final String SAMPLE_MINIFIED =
+            "package sample;import java.util.List;public class Sample{private int count=0;" +
+            "public int sum(List<Integer>values){int total=0;for(Integer value:values){if(value!=null)total+=value;}" +
+            "return total+count;}}";
+
+    public void testMinify() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            assertEquals(SAMPLE_MINIFIED, engine.minify(SAMPLE));
+            assertEquals(SAMPLE_MINIFIED, engine.minify(SAMPLE_MINIFIED));
+            assertEquals(ASTVisitor.minify(SAMPLE), engine.minify(SAMPLE));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testMinifyFile() throws IOException
+    {
+        // Non-ASCII after a long ASCII run, so decoding has to hand over from the fast path mid-file.
+        // The minified literal spells those characters as unicode escapes.
+        String source = SAMPLE.replace("private int count = 0;", "private String name = \"caf\u00e9 \u4e2d\";");
+        String expected = SAMPLE_MINIFIED.replace("private int count=0;", "private String name=\"caf\\u00e9 \\u4e2d\";");
+        Path file = Files.createTempFile("Sample", ".java");
+        try
+        {
+            Charset utf8 = Charset.forName("UTF-8");
+            Files.write(file, source.getBytes(utf8));
+            MinifierEngine engine = new MinifierEngine(utf8);
+            try
+            {
+                assertEquals(expected, engine.minify(file));
+                Files.write(file, SAMPLE.getBytes(utf8));
+                assertEquals(SAMPLE_MINIFIED, engine.minify(file));
+            }
+            finally
+            {
+                engine.close();
+            }
+
+            Charset utf16 = Charset.forName("UTF-16");
+            Files.write(file, source.getBytes(utf16));
+            engine = new MinifierEngine(utf16);
+            try
+            {
+                assertEquals(expected, engine.minify(file));
+            }
+            finally
+            {
+                engine.close();
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    public void testFingerprint() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String reformatted = SAMPLE.replace("// running total", "/* total so far */").replace("    ", "\t");
+            assertEquals(engine.fingerprint(SAMPLE), engine.fingerprint(SAMPLE_MINIFIED));
+            assertEquals(engine.fingerprint(SAMPLE), engine.fingerprint(reformatted));
+            assertEquals(ASTVisitor.fingerprint(SAMPLE), engine.fingerprint(SAMPLE));
+
+            assertFalse(engine.fingerprint(SAMPLE).equals(engine.fingerprint(SAMPLE.replace("count", "counted"))));
+            assertFalse(engine.fingerprint(SAMPLE).equals(engine.fingerprint(SAMPLE.replace("count = 0", "count = 1"))));
+            assertFalse(engine.fingerprint(SAMPLE).equals(engine.fingerprint(SAMPLE.replace("total + count", "total - count"))));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testClosedEngineRejectsWork() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        engine.close();
+        try
+        {
+            engine.minify(SAMPLE);
+            fail("Expected a closed engine to refuse work");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Names are interned in the Context's name table, so getting the same Name object back from two
+     * parses shows they went through the same Context, and so the same factories. How much time
+     * that saves is measured by EngineReuseBenchmark.
+     */
+    public void testReusesContextAcrossFiles()
+    {
+        MinifierEngine engine = new MinifierEngine();
+        MinifierEngine other = new MinifierEngine();
+        try
+        {
+            Name first = className(engine.parse(SAMPLE));
+            assertSame(first, className(engine.parse(SAMPLE_MINIFIED)));
+            assertNotSame(first, className(other.parse(SAMPLE)));
+        }
+        finally
+        {
+            engine.close();
+            other.close();
+        }
+    }
+
+    private static Name className(JCTree.JCCompilationUnit compilationUnit)
+    {
+        return ((JCTree.JCClassDecl) compilationUnit.getTypeDecls().get(0)).getSimpleName();
+    }
+}
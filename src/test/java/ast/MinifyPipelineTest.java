@@ -0,0 +1,120 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class MinifyPipelineTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("minify-pipeline");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        BatchMinifierTest.TestFiles.deleteRecursively(directory);
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, String contents) throws IOException
+    {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(contents.getBytes(UTF_8));
+        zip.closeEntry();
+    }
+
+    private String read(String name) throws IOException
+    {
+        return new String(Files.readAllBytes(directory.resolve("out").resolve(name)), UTF_8);
+    }
+
+    public void testMinifiesDirectoriesArchivesAndFiles() throws IOException
+    {
+        for (int i = 0; i < 40; ++i)
+        {
+            BatchMinifierTest.TestFiles.write(directory.resolve("src/p" + (i % 3) + "/Sample" + i + ".java"),
+                    MinifierEngineTest.SAMPLE.replace("Sample", "Sample" + i));
+        }
+        Path single = BatchMinifierTest.TestFiles.write(directory.resolve("Single.java"), MinifierEngineTest.SAMPLE);
+        Path archive = directory.resolve("sources.jar");
+        OutputStream out = Files.newOutputStream(archive);
+        try
+        {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            putEntry(zip, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+            putEntry(zip, "q/Zipped.java", MinifierEngineTest.SAMPLE);
+            putEntry(zip, "../Escape.java", MinifierEngineTest.SAMPLE);
+            zip.close();
+        }
+        finally
+        {
+            out.close();
+        }
+
+        MinifyPipeline.Stats stats = new MinifyPipeline(3, UTF_8, EnumSet.noneOf(MinifyOption.class))
+                .addDirectory(directory.resolve("src"))
+                .addArchive(archive)
+                .addFile(single, "r/Single.java")
+                .run(directory.resolve("out"));
+
+        assertEquals(42, stats.files());
+        assertEquals(1, stats.failures().size());
+        assertTrue(stats.failures().get(0).startsWith("../Escape.java: "));
+        assertFalse(Files.exists(directory.resolve("Escape.java")));
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED.replace("Sample", "Sample7"), read("p1/Sample7.java"));
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, read("q/Zipped.java"));
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, read("r/Single.java"));
+        assertFalse(Files.exists(directory.resolve("out/META-INF")));
+        assertTrue(stats.latencyPercentile(50) <= stats.latencyPercentile(99));
+        assertTrue(stats.bytesWritten() < stats.bytesRead());
+    }
+
+    public void testDeeplyNestedFileFailsAlone() throws IOException
+    {
+        // Deep enough to overflow the stack of a recursive parser or visitor.
+        StringBuilder nested = new StringBuilder("package p;class Deep{int x=");
+        for (int i = 0; i < 100000; ++i) nested.append("1-(");
+        nested.append('1');
+        for (int i = 0; i < 100000; ++i) nested.append(')');
+        nested.append(";}");
+        Path deep = BatchMinifierTest.TestFiles.write(directory.resolve("Deep.java"), nested.toString());
+        Path file = BatchMinifierTest.TestFiles.write(directory.resolve("Sample.java"), MinifierEngineTest.SAMPLE);
+
+        // A single worker, so a failure that killed it would leave nothing to minify the other file.
+        MinifyPipeline.Stats stats = new MinifyPipeline(1, UTF_8, Collections.<MinifyOption>emptySet())
+                .addFile(deep, "Deep.java")
+                .addFile(file, "Sample.java")
+                .run(directory.resolve("out"));
+        assertEquals(1, stats.files());
+        assertEquals(1, stats.failures().size());
+        assertTrue(stats.failures().get(0), stats.failures().get(0).startsWith("Deep.java: java.lang.StackOverflowError"));
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, read("Sample.java"));
+    }
+
+    public void testOnlyMeasuresWithoutOutputDirectory() throws IOException
+    {
+        Path file = BatchMinifierTest.TestFiles.write(directory.resolve("Sample.java"), MinifierEngineTest.SAMPLE);
+        MinifyPipeline.Stats stats = new MinifyPipeline(1, UTF_8, Collections.<MinifyOption>emptySet())
+                .addFile(file, "Sample.java")
+                .addFile(directory.resolve("Missing.java"), "Missing.java")
+                .run(null);
+        assertEquals(1, stats.files());
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED.length(), stats.bytesWritten());
+        assertEquals(1, stats.failures().size());
+        assertEquals(1, directory.toFile().list().length);
+    }
+}
@@ -0,0 +1,138 @@
+package ast;
+
+import com.google.common.io.ByteStreams;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MinifyServerTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MinifyServer server;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        server = new MinifyServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, UTF_8);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        server.close();
+    }
+
+    private HttpURLConnection post(String path, byte[] body) throws IOException
+    {
+        return post(server, path, body, false);
+    }
+
+    private static HttpURLConnection post(MinifyServer server, String path, byte[] body, boolean chunked) throws IOException
+    {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (chunked) connection.setChunkedStreamingMode(256);
+        OutputStream out = connection.getOutputStream();
+        try
+        {
+            out.write(body);
+        }
+        finally
+        {
+            out.close();
+        }
+        return connection;
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException
+    {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        try
+        {
+            return ByteStreams.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    public void testMinify() throws IOException
+    {
+        for (int i = 0; i < 3; ++i)
+        {
+            HttpURLConnection connection = post("/minify", MinifierEngineTest.SAMPLE.getBytes(UTF_8));
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, new String(read(connection), UTF_8));
+            assertTrue(connection.getHeaderField("Server-Timing").matches("read;dur=[0-9.]+, minify;dur=[0-9.]+"));
+        }
+
+        HttpURLConnection renamed = post("/minify?options=rename_locals", MinifierEngineTest.SAMPLE.getBytes(UTF_8));
+        assertEquals(200, renamed.getResponseCode());
+        assertTrue(new String(read(renamed), UTF_8).length() < MinifierEngineTest.SAMPLE_MINIFIED.length());
+    }
+
+    public void testBatch() throws IOException
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("sample/Sample.java", MinifierEngineTest.SAMPLE);
+        entries.put("sample/Broken.java", "class {");
+        entries.put("sample/readme.txt", "keep   me");
+        HttpURLConnection connection = post("/minify/batch", ArchiveMinifierTest.zip(entries));
+        assertEquals(200, connection.getResponseCode());
+        String unminified = connection.getHeaderField("X-Unminified");
+        assertTrue(unminified, unminified.startsWith("sample/Broken.java: java.lang.IllegalArgumentException"));
+
+        entries.put("sample/Sample.java", MinifierEngineTest.SAMPLE_MINIFIED);
+        assertEquals(entries, ArchiveMinifierTest.unzip(read(connection)));
+    }
+
+    public void testErrors() throws IOException
+    {
+        HttpURLConnection broken = post("/minify", "class {".getBytes(UTF_8));
+        assertEquals(422, broken.getResponseCode());
+        assertTrue(new String(read(broken), UTF_8).startsWith("Could not minify"));
+
+        assertEquals(400, post("/minify?options=NOT_AN_OPTION", new byte[0]).getResponseCode());
+        assertEquals(404, post("/minifyx", new byte[0]).getResponseCode());
+
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), "/minify");
+        HttpURLConnection get = (HttpURLConnection) url.openConnection();
+        assertEquals(405, get.getResponseCode());
+        assertEquals("POST", get.getHeaderField("Allow"));
+    }
+
+    public void testRejectsBodiesOverTheLimit() throws IOException
+    {
+        MinifyServer small = new MinifyServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, UTF_8, 1024);
+        small.start();
+        try
+        {
+            byte[] large = new byte[4096];
+            assertEquals(413, post(small, "/minify", large, false).getResponseCode());
+            // Without a Content-Length, the limit is enforced while reading.
+            assertEquals(413, post(small, "/minify", large, true).getResponseCode());
+
+            HttpURLConnection fits = post(small, "/minify", MinifierEngineTest.SAMPLE.getBytes(UTF_8), true);
+            assertEquals(200, fits.getResponseCode());
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, new String(read(fits), UTF_8));
+        }
+        finally
+        {
+            small.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+public class ModifierStripperTest extends TestCase
+{
+    private static final String SOURCE =
+            "package p;\n" +
+            "public abstract interface Shape {\n" +
+            "    public static final int SIDES = 0;\n" +
+            "    public abstract double area();\n" +
+            "    public static class Unit implements Shape {\n" +
+            "        @Override public double area() { return 1; }\n" +
+            "        @java.lang.Override public String toString() { return \"unit\"; }\n" +
+            "        static interface Visitor { void visit(Shape shape); }\n" +
+            "        @Deprecated public static final int SIDES = 4;\n" +
+            "    }\n" +
+            "}\n";
+
+    private static String minify(String source, MinifyOption... options) throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.minify(source, EnumSet.of(options[0], options));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testDropsImpliedModifiers() throws IOException
+    {
+        String stripped = minify(SOURCE, MinifyOption.DROP_IMPLIED_MODIFIERS);
+        assertEquals("package p;public interface Shape{int SIDES=0;double area();class Unit implements Shape{" +
+                "@Override public double area(){return 1;}@java.lang.Override public String toString(){return \"unit\";}" +
+                "interface Visitor{void visit(Shape shape);}@Deprecated public static final int SIDES=4;}}", stripped);
+        LocalRenamerTest.assertCompiles("Shape", stripped);
+    }
+
+    public void testDropsOverridesOnlyWhenAskedTo() throws IOException
+    {
+        String stripped = minify(SOURCE, MinifyOption.DROP_IMPLIED_MODIFIERS, MinifyOption.DROP_OVERRIDE);
+        assertEquals("package p;public interface Shape{int SIDES=0;double area();class Unit implements Shape{" +
+                "public double area(){return 1;}public String toString(){return \"unit\";}" +
+                "interface Visitor{void visit(Shape shape);}@Deprecated public static final int SIDES=4;}}", stripped);
+        LocalRenamerTest.assertCompiles("Shape", stripped);
+
+        String ownOverride = "package p;import q.Override;class C{@Override public String toString(){return \"\";}}";
+        assertEquals(ownOverride, minify(ownOverride, MinifyOption.DROP_OVERRIDE));
+    }
+}
@@ -0,0 +1,82 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeScanner;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+public class ParenRemoverTest extends TestCase
+{
+    private static final String SOURCE =
+            "package p;\n" +
+            "class C {\n" +
+            "    int f(int a, int b, boolean c, Object o) {\n" +
+            "        int x = (a + b) * (a - b) + (a * b) + (a - (b - 1)) - (-a) - (-1) + (+b) - (--a);\n" +
+            "        x = (a << 2) + ((a)) + (c ? (a) : (b)) + ((int) (long) a) + ((a));\n" +
+            "        x += -(-a) + (~a) + (x++) + -(++x) + (-(a + b));\n" +
+            "        boolean d = (o instanceof String) == c && (c || (a > b)) && ((c ? a : b) > 0) && !(o instanceof C);\n" +
+            "        x = (c ? (x = 1) : (c ? 2 : 3)) + (c ? 4 : (5));\n" +
+            "        Object p = (Object) (-a);\n" +
+            "        Object q = (Integer) (a);\n" +
+            "        long r = (long) (-a) + (long) (a + b);\n" +
+            "        String s = \"\" + (a + b) + (a * b) + ((\"\" + a) + b);\n" +
+            "        if ((d)) x = (x);\n" +
+            "        return x;\n" +
+            "    }\n" +
+            "}\n";
+
+    private static String structure(MinifierEngine engine, String source)
+    {
+        final StringBuilder structure = new StringBuilder();
+        engine.parse(source).accept(new TreeScanner()
+        {
+            @Override
+            public void scan(JCTree tree)
+            {
+                if (tree == null) return;
+                if (!(tree instanceof JCTree.JCParens))
+                {
+                    structure.append(tree.getKind());
+                    if (tree instanceof JCTree.JCIdent || tree instanceof JCTree.JCLiteral) structure.append(' ').append(tree);
+                    structure.append('\n');
+                }
+                super.scan(tree);
+            }
+        });
+        return structure.toString();
+    }
+
+    public void testDropsRedundantParentheses() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String dropped = engine.minify(SOURCE, EnumSet.of(MinifyOption.DROP_PARENS));
+            assertEquals("package p;class C{int f(int a,int b,boolean c,Object o){" +
+                    "int x=(a+b)*(a-b)+a*b+(a-(b-1))- -a- -1+ +b- --a;" +
+                    "x=(a<<2)+a+(c?a:b)+(int)(long)a+a;" +
+                    "x+=- -a+~a+x++ +-++x+-(a+b);" +
+                    "boolean d=o instanceof String==c&&(c||a>b)&&(c?a:b)>0&&!(o instanceof C);" +
+                    "x=(c?x=1:c?2:3)+(c?4:5);" +
+                    "Object p=(Object)(-a);" +
+                    "Object q=(Integer)a;" +
+                    "long r=(long)-a+(long)(a+b);" +
+                    "String s=\"\"+(a+b)+a*b+(\"\"+a+b);" +
+                    "if((d))x=(x);return x;}}", dropped);
+            assertEquals(structure(engine, SOURCE), structure(engine, dropped));
+            assertEquals(dropped, engine.minify(dropped, EnumSet.of(MinifyOption.DROP_PARENS)));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testSeparatesSigns() throws IOException
+    {
+        String source = "package p;class C{int f(int a,int b){return a- -b+ +a- -1+ ++a- --b+a++ +b;}}";
+        assertEquals(source, ASTVisitor.minify(source));
+    }
+}
@@ -0,0 +1,132 @@
+package ast;
+
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Names;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+public class PrivateManglerTest extends TestCase
+{
+    private static String mangle(String source) throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            return engine.minify(source, EnumSet.of(MinifyOption.MANGLE_PRIVATES));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testManglesPrivateMembersByFrequency() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "public class C {\n" +
+                "    private static final int LIMIT = 10;\n" +
+                "    private int count;\n" +
+                "    public int total;\n" +
+                "    private static class Counter { private int hits; }\n" +
+                "    private void bump(int count) { this.count += count; if (this.count > LIMIT) reset(); }\n" +
+                "    private void reset() { count = 0; }\n" +
+                "    public int run() { Counter counter = new Counter(); counter.hits++; bump(1); bump(2); return count + C.LIMIT + total; }\n" +
+                "}\n";
+        String mangled = mangle(source);
+        assertEquals("package p;public class C{private static final int c=10;private int a;public int total;" +
+                "private static class b{private int hits;}" +
+                "private void d(int a){this.a+=a;if(this.a>c)e();}" +
+                "private void e(){a=0;}" +
+                "public int run(){b counter=new b();counter.hits++;d(1);d(2);return a+C.c+total;}}", mangled);
+        LocalRenamerTest.assertCompiles("C", mangled);
+    }
+
+    public void testLeavesReachableAndInheritableNamesAlone() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "import java.util.ArrayList;\n" +
+                "public class C extends ArrayList<String> {\n" +
+                "    private static final long serialVersionUID = 1L;\n" +
+                "    private int modCount2;\n" +
+                "    private transient int cached;\n" +
+                "    private static int instances;\n" +
+                "    @Deprecated private static int old;\n" +
+                "    private boolean check(int index) { return index < size(); }\n" +
+                "    private static int twice(int x) { return 2 * x; }\n" +
+                "    public int use(C other) {\n" +
+                "        instances++; cached = old;\n" +
+                "        return other.cached + twice(cached) + (check(0) ? 1 : 0) + modCount2;\n" +
+                "    }\n" +
+                "    public String toString() { return \"C\" + instances; }\n" +
+                "}\n";
+        String mangled = mangle(source);
+        // Only the static field used unqualified survives the checks: the class has a supertype, so
+        // methods may be overloads of inherited ones, and other.cached can't be resolved lexically.
+        assertEquals("package p;import java.util.ArrayList;public class C extends ArrayList<String>{" +
+                "private static final long serialVersionUID=1L;private int modCount2;private transient int cached;" +
+                "private static int a;@Deprecated private static int old;" +
+                "private boolean check(int index){return index<size();}" +
+                "private static int twice(int x){return 2*x;}" +
+                "public int use(C other){a++;cached=old;return other.cached+twice(cached)+(check(0)?1:0)+modCount2;}" +
+                "public String toString(){return \"C\"+a;}}", mangled);
+        LocalRenamerTest.assertCompiles("C", mangled);
+    }
+
+    public void testCombinesWithRenamedLocals() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "public class C {\n" +
+                "    private final StringBuilder buffer = new StringBuilder();\n" +
+                "    private C append(String text) { buffer.append(text); return this; }\n" +
+                "    public String build(String first, String second) { append(first); append(second); return buffer.toString(); }\n" +
+                "}\n";
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String minified = engine.minify(source, EnumSet.of(MinifyOption.MANGLE_PRIVATES, MinifyOption.RENAME_LOCALS));
+            assertFalse(minified, minified.contains("buffer"));
+            assertFalse(minified, minified.contains("text"));
+            // StringBuilder.append is spelled the same, so the private append keeps its name.
+            assertTrue(minified, minified.contains("append(b);append(c);"));
+            LocalRenamerTest.assertCompiles("C", minified);
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    /**
+     * Works on the tree, since the minified output doesn't include annotation element defaults.
+     */
+    public void testRenamesUsesInAnnotationDefaults() throws IOException
+    {
+        String source =
+                "package p;\n" +
+                "class O {\n" +
+                "    private static final int X = 1;\n" +
+                "    @interface A { int v() default X; }\n" +
+                "}\n";
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            JCTree.JCCompilationUnit compilationUnit = engine.parse(source);
+            new PrivateMangler(Names.instance(new Context())).mangle(compilationUnit);
+            JCTree.JCClassDecl outer = (JCTree.JCClassDecl) compilationUnit.getTypeDecls().get(0);
+            JCTree.JCVariableDecl field = (JCTree.JCVariableDecl) outer.defs.get(0);
+            JCTree.JCMethodDecl element = (JCTree.JCMethodDecl) ((JCTree.JCClassDecl) outer.defs.get(1)).defs.get(0);
+            assertFalse(field.name.toString().equals("X"));
+            assertEquals(field.name.toString(), ((JCTree.JCIdent) element.defaultValue).name.toString());
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+}
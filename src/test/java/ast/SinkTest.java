@@ -0,0 +1,104 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+public class SinkTest extends TestCase
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void testWriterSink() throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            engine.minify(MinifierEngineTest.SAMPLE, Sink.forWriter(writer));
+        }
+        finally
+        {
+            engine.close();
+        }
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, writer.toString());
+    }
+
+    public void testChannelSinkSpillsWhenBufferIsSmall() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            engine.minify(MinifierEngineTest.SAMPLE, Sink.forChannel(Channels.newChannel(bytes), 16));
+        }
+        finally
+        {
+            engine.close();
+        }
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, new String(bytes.toByteArray(), UTF_8));
+    }
+
+    public void testChannelSinkRejectsBufferTooSmallForACharacter()
+    {
+        try
+        {
+            Sink.forChannel(Channels.newChannel(new ByteArrayOutputStream()), 3);
+            fail("Expected a 3-byte buffer to be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testHashingSinkMatchesHashOfOutput() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            Sink.HashingSink sink = Sink.forHashing();
+            engine.minify(MinifierEngineTest.SAMPLE, sink);
+            assertEquals(Sink.HashingSink.hashOf(MinifierEngineTest.SAMPLE_MINIFIED), sink.hash());
+            assertEquals(Sink.HashingSink.hashOf(MinifierEngineTest.SAMPLE_MINIFIED), engine.hash(MinifierEngineTest.SAMPLE));
+            assertFalse(engine.hash(MinifierEngineTest.SAMPLE).equals(engine.hash(MinifierEngineTest.SAMPLE.replace("total", "sum"))));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testUtf8Encoding()
+    {
+        String text = "a\u00e9\u20ac\ud83d\ude00z";
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        Sink sink = Sink.forBuffer(buffer);
+        sink.append(text);
+        sink.flush();
+
+        buffer.flip();
+        byte[] encoded = new byte[buffer.remaining()];
+        buffer.get(encoded);
+        assertEquals(text, new String(encoded, UTF_8));
+    }
+
+    public void testBufferSinkOverflow()
+    {
+        Sink sink = Sink.forBuffer(ByteBuffer.allocate(4));
+        try
+        {
+            sink.append("too long");
+            fail("Expected the buffer to overflow");
+        }
+        catch (BufferOverflowException e)
+        {
+            // expected
+        }
+    }
+}
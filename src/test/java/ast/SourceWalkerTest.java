@@ -0,0 +1,74 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+public class SourceWalkerTest extends TestCase
+{
+    private Path root;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        root = Files.createTempDirectory("source-walker");
+        BatchMinifierTest.TestFiles.write(root.resolve("A.java"), "package a;class A{}");
+        BatchMinifierTest.TestFiles.write(root.resolve("notes.txt"), "not java");
+        BatchMinifierTest.TestFiles.write(root.resolve("b/B.java"), "package b;class B{}");
+        BatchMinifierTest.TestFiles.write(root.resolve("b/c/d/D.java"), "package d;class D{}");
+        BatchMinifierTest.TestFiles.write(root.resolve("target/T.java"), "package t;class T{}");
+        BatchMinifierTest.TestFiles.write(root.resolve("b/generated/G.java"), "package g;class G{}");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        BatchMinifierTest.TestFiles.deleteRecursively(root);
+    }
+
+    private List<String> walk(SourceWalker walker) throws IOException
+    {
+        final List<String> found = Collections.synchronizedList(new ArrayList<String>());
+        walker.walk(root, new SourceWalker.Listener()
+        {
+            @Override
+            public void onFile(Path file)
+            {
+                found.add(root.relativize(file).toString().replace('\\', '/'));
+            }
+        });
+        Collections.sort(found);
+        return found;
+    }
+
+    public void testFiltersFilesAndSkipsExcludedDirectories() throws IOException
+    {
+        assertEquals(Arrays.asList("A.java", "b/B.java", "b/c/d/D.java", "b/generated/G.java", "notes.txt", "target/T.java"),
+                walk(new SourceWalker(2)));
+        assertEquals(Arrays.asList("A.java", "b/B.java", "b/c/d/D.java"),
+                walk(new SourceWalker(2).include("*.java").exclude("target").exclude("b/generated")));
+    }
+
+    public void testMinifyTree() throws IOException
+    {
+        BatchMinifier batchMinifier = new BatchMinifier(2);
+        try
+        {
+            SortedMap<Path, String> minified = batchMinifier.minifyTree(new SourceWalker(2).include("*.java").exclude("target"), root);
+            assertEquals(4, minified.size());
+            assertEquals("package d;class D{}", minified.get(root.resolve("b/c/d/D.java")));
+            assertEquals(root.resolve("A.java"), minified.firstKey());
+        }
+        finally
+        {
+            batchMinifier.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ThreadLocalEnginesTest extends TestCase
+{
+    private static void assertClosed(MinifierEngine engine)
+    {
+        try
+        {
+            engine.minify(MinifierEngineTest.SAMPLE);
+            fail("Expected the engine to be closed");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    public void testOneEnginePerThread() throws IOException, InterruptedException
+    {
+        final ThreadLocalEngines engines = new ThreadLocalEngines(Charset.defaultCharset());
+        MinifierEngine mine = engines.get();
+        assertSame(mine, engines.get());
+
+        final AtomicReference<MinifierEngine> theirs = new AtomicReference<MinifierEngine>();
+        Thread worker = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                theirs.set(engines.get());
+            }
+        };
+        worker.start();
+        worker.join();
+        assertNotSame(mine, theirs.get());
+
+        engines.close();
+        assertClosed(mine);
+        assertClosed(theirs.get());
+    }
+
+    public void testClosesEnginesOfDeadThreads() throws IOException, InterruptedException
+    {
+        final ThreadLocalEngines engines = new ThreadLocalEngines(Charset.defaultCharset());
+        final AtomicReference<MinifierEngine> theirs = new AtomicReference<MinifierEngine>();
+        Thread worker = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                theirs.set(engines.get());
+            }
+        };
+        worker.start();
+        worker.join();
+
+        // The next thread to need an engine cleans up after the one that died.
+        MinifierEngine mine = engines.get();
+        assertClosed(theirs.get());
+        assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, mine.minify(MinifierEngineTest.SAMPLE));
+        engines.close();
+    }
+}
@@ -0,0 +1,147 @@
+package ast;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+public class TokenMinifierTest extends TestCase
+{
+    private static final Set<MinifyOption> TOKENS_ONLY = EnumSet.of(MinifyOption.TOKENS_ONLY);
+
+    static final String[] CORPUS = {
+            MinifierEngineTest.SAMPLE,
+
+            "package a.b;\n" +
+            "import static java.lang.Math.max;\n" +
+            "import java.util.*;\n" +
+            "@Deprecated\n" +
+            "final public class Modifiers extends Object implements Runnable, Comparable<Modifiers>\n" +
+            "{\n" +
+            "    static private final long serialVersionUID = 0x7FL;\n" +
+            "    transient volatile protected int count;\n" +
+            "    public @SuppressWarnings(\"unchecked\") synchronized static void run() { }\n" +
+            "    @Override public final int compareTo(Modifiers other) { return -1; }\n" +
+            "    public void run(final Object lock) { synchronized (lock) { count++; } }\n" +
+            "}\n",
+
+            "package literals;\n" +
+            "class Literals\n" +
+            "{\n" +
+            "    int hex = 0xFF;\n" +
+            "    int octal = 017;\n" +
+            "    int negative = -2147483648;\n" +
+            "    long big = 12345678901l;\n" +
+            "    float f = 1.5f;\n" +
+            "    double d = 1e6;\n" +
+            "    double e = .25;\n" +
+            "    char c = '\\n';\n" +
+            "    char quote = '\\'';\n" +
+            "    String s = \"tab\\tquote\\\" unicode \\u00e9\";\n" +
+            "    int pick(int x)\n" +
+            "    {\n" +
+            "        switch (x)\n" +
+            "        {\n" +
+            "            case -1: return -2;\n" +
+            "            case 0: throw new IllegalStateException(\"zero\" + -x);\n" +
+            "            default: return x - -3 + -0x10;\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n",
+
+            "package generics;\n" +
+            "import java.util.List;\n" +
+            "import java.util.Map;\n" +
+            "public abstract class Generics<K extends Comparable<K>, V>\n" +
+            "{\n" +
+            "    private Map<K, List<Map<K, V>>> nested;\n" +
+            "    protected abstract <T> T convert(Object value, Class<T> type);\n" +
+            "    public Runnable task()\n" +
+            "    {\n" +
+            "        return new Runnable()\n" +
+            "        {\n" +
+            "            public void run() { System.out.println(this.<String>identity(\"x\").length()); }\n" +
+            "            <T> T identity(T t) { return t; }\n" +
+            "        };\n" +
+            "    }\n" +
+            "    boolean test(Object o) { return o instanceof String && !((String) o).isEmpty() ? true : false; }\n" +
+            "}\n",
+    };
+
+    public void testMatchesTreeMinifier() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            for (String source : CORPUS)
+            {
+                assertEquals(engine.minify(source), engine.minify(source, TOKENS_ONLY));
+            }
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testMinimumValuesAfterCasts() throws IOException
+    {
+        String source =
+                "package casts;\n" +
+                "class Casts\n" +
+                "{\n" +
+                "    int i = (int) -2147483648;\n" +
+                "    long l = (long) -9223372036854775808L;\n" +
+                "    int small = (int) -1;\n" +
+                "    int difference(int a) { return (a) - 1 - (a) - -2; }\n" +
+                "}\n";
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            String minified = engine.minify(source, TOKENS_ONLY);
+            assertEquals("package casts;class Casts{int i=(int)-2147483648;long l=(long)-9223372036854775808L;" +
+                    "int small=(int)-1;int difference(int a){return(a)-1-(a)- -2;}}", minified);
+            assertEquals(engine.minify(source), minified);
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testMinimumValuesInAnnotations() throws IOException
+    {
+        String source =
+                "package annotations;\n" +
+                "@A(-2147483648)\n" +
+                "class C\n" +
+                "{\n" +
+                "    @B(-9223372036854775808L) int f;\n" +
+                "    @A((int) -2147483648) int g;\n" +
+                "    @A(1 - -2) int h;\n" +
+                "}\n";
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            assertEquals(engine.minify(source), engine.minify(source, TOKENS_ONLY));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+
+    public void testSample() throws IOException
+    {
+        MinifierEngine engine = new MinifierEngine();
+        try
+        {
+            assertEquals(MinifierEngineTest.SAMPLE_MINIFIED, engine.minify(MinifierEngineTest.SAMPLE, TOKENS_ONLY));
+        }
+        finally
+        {
+            engine.close();
+        }
+    }
+}